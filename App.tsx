@@ -14,6 +14,8 @@ import { Device } from '@helper/device';
 import { PlayerMonitor } from '@view/PlayerMonitor';
 import { StatusBarHeight } from '@view/StatusBar';
 import { SwitchSiteDialog } from '@view/SwitchSiteDialog';
+import { loadFontFamily } from '@helper/font';
+import { StartupModule } from '@helper/native';
 
 function App() {
     const [inited, setInited] = useState(false);
@@ -56,6 +58,13 @@ function App() {
         updateAppearance();
     }, [isDarkMode])
 
+    useEffect(() => {
+        if (inited) {
+            // android only, closes the startup trace at the first rendered screen
+            StartupModule?.markFirstFrame()
+        }
+    }, [inited])
+
     Appearance.addChangeListener(({colorScheme}) => {
         updateAppearance();
     })
@@ -63,7 +72,8 @@ function App() {
     if (inited) {
         return (
             <Provider store={store}>
-                <PersistGate loading={null} persistor={persistor}>
+                <PersistGate loading={null} persistor={persistor}
+                    onBeforeLift={() => loadFontFamily(store.getState().theme.fontFamily)}>
                 <SafeAreaProvider>
                 <Router />
                 </SafeAreaProvider>
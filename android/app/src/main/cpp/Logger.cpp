@@ -0,0 +1,150 @@
+#include "Logger.h"
+
+#include <algorithm>
+#include <atomic>
+#include <chrono>
+#include <mutex>
+#include <string.h>
+#include <stdio.h>
+#include <sys/stat.h>
+#include <thread>
+#include <time.h>
+
+// slots are claimed with a fetch_add on head, each slot carries a sequence number so readers can
+// detect records that are still being written or were overwritten while they copied them
+static const uint64_t LOG_RING_SIZE = 2048;
+static const size_t LOG_PREFIX_SIZE = 24;
+static const size_t LOG_TEXT_SIZE = 232;
+
+struct LogRecord {
+    std::atomic<uint64_t> seq;
+    int64_t time;
+    int level;
+    char prefix[LOG_PREFIX_SIZE];
+    char text[LOG_TEXT_SIZE];
+};
+
+static LogRecord ring[LOG_RING_SIZE];
+static std::atomic<uint64_t> head{0};
+static std::once_flag writer_started;
+
+static int64_t monotonic_ns() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return static_cast<int64_t>(ts.tv_sec) * 1000000000LL + ts.tv_nsec;
+}
+
+static void copy_text(char *out, size_t size, const char *in) {
+    if (in == nullptr) {
+        out[0] = 0;
+        return;
+    }
+    strncpy(out, in, size - 1);
+    out[size - 1] = 0;
+    // mpv terminates every message with a newline, the formatter adds its own
+    size_t length = strlen(out);
+    if (length > 0 && out[length - 1] == '\n') out[length - 1] = 0;
+}
+
+void log_push(const mpv_event_log_message *message) {
+    uint64_t n = head.fetch_add(1, std::memory_order_relaxed);
+    LogRecord &record = ring[n % LOG_RING_SIZE];
+    record.seq.store(2 * n + 1, std::memory_order_release);
+    std::atomic_thread_fence(std::memory_order_release);
+    record.time = monotonic_ns();
+    record.level = message->log_level;
+    copy_text(record.prefix, LOG_PREFIX_SIZE, message->prefix);
+    copy_text(record.text, LOG_TEXT_SIZE, message->text);
+    record.seq.store(2 * n + 2, std::memory_order_release);
+}
+
+static const char *level_name(int level) {
+    switch (level) {
+        case MPV_LOG_LEVEL_FATAL: return "fatal";
+        case MPV_LOG_LEVEL_ERROR: return "error";
+        case MPV_LOG_LEVEL_WARN: return "warn";
+        case MPV_LOG_LEVEL_INFO: return "info";
+        case MPV_LOG_LEVEL_V: return "v";
+        case MPV_LOG_LEVEL_DEBUG: return "debug";
+        default: return "trace";
+    }
+}
+
+// copies record n into out, false when it is not (or no longer) available
+static bool read_record(uint64_t n, LogRecord &out) {
+    LogRecord &record = ring[n % LOG_RING_SIZE];
+    uint64_t before = record.seq.load(std::memory_order_acquire);
+    if (before != 2 * n + 2) return false;
+    out.time = record.time;
+    out.level = record.level;
+    memcpy(out.prefix, record.prefix, LOG_PREFIX_SIZE);
+    memcpy(out.text, record.text, LOG_TEXT_SIZE);
+    std::atomic_thread_fence(std::memory_order_acquire);
+    return record.seq.load(std::memory_order_relaxed) == before;
+}
+
+static int format_record(const LogRecord &record, char *out, size_t size) {
+    return snprintf(out, size, "%lld.%03lld [%s] %s: %s\n",
+                    static_cast<long long>(record.time / 1000000000LL),
+                    static_cast<long long>(record.time / 1000000LL % 1000),
+                    level_name(record.level), record.prefix, record.text);
+}
+
+static void rotate(const std::string &dir, int max_files) {
+    for (int i = max_files - 1; i > 0; --i) {
+        std::string from = dir + "/mpv." + std::to_string(i - 1) + ".log";
+        std::string to = dir + "/mpv." + std::to_string(i) + ".log";
+        rename(from.c_str(), to.c_str());
+    }
+}
+
+static void write_loop(std::string dir, long max_bytes, int max_files) {
+    std::string path = dir + "/mpv.0.log";
+    uint64_t tail = head.load(std::memory_order_acquire);
+    LogRecord record;
+    char line[LOG_PREFIX_SIZE + LOG_TEXT_SIZE + 64];
+    while (true) {
+        std::this_thread::sleep_for(std::chrono::seconds(1));
+        uint64_t end = head.load(std::memory_order_acquire);
+        if (end == tail) continue;
+        // records older than the ring size were overwritten before we got to them
+        if (end - tail > LOG_RING_SIZE) tail = end - LOG_RING_SIZE;
+
+        struct stat st;
+        if (stat(path.c_str(), &st) == 0 && st.st_size > max_bytes) rotate(dir, max_files);
+        FILE *file = fopen(path.c_str(), "a");
+        if (file == nullptr) {
+            tail = end;
+            continue;
+        }
+        for (; tail < end; ++tail) {
+            if (!read_record(tail, record)) continue;
+            int length = format_record(record, line, sizeof(line));
+            fwrite(line, 1, std::min(static_cast<size_t>(length), sizeof(line) - 1), file);
+        }
+        fclose(file);
+    }
+}
+
+void log_start_writer(const char *dir, long max_bytes, int max_files) {
+    std::string path(dir);
+    std::call_once(writer_started, [=] {
+        mkdir(path.c_str(), 0700);
+        std::thread(write_loop, path, max_bytes, max_files).detach();
+    });
+}
+
+std::string log_recent(double seconds) {
+    int64_t since = monotonic_ns() - static_cast<int64_t>(seconds * 1e9);
+    uint64_t end = head.load(std::memory_order_acquire);
+    uint64_t start = end > LOG_RING_SIZE ? end - LOG_RING_SIZE : 0;
+    std::string result;
+    LogRecord record;
+    char line[LOG_PREFIX_SIZE + LOG_TEXT_SIZE + 64];
+    for (uint64_t n = start; n < end; ++n) {
+        if (!read_record(n, record) || record.time < since) continue;
+        int length = format_record(record, line, sizeof(line));
+        result.append(line, std::min(static_cast<size_t>(length), sizeof(line) - 1));
+    }
+    return result;
+}
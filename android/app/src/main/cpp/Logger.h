@@ -0,0 +1,13 @@
+#pragma once
+
+#include <mpv/client.h>
+#include <string>
+
+// copies a log message into the lock-free ring buffer, safe to call from any thread
+void log_push(const mpv_event_log_message *message);
+
+// starts the background thread that appends the ring buffer to rotating files in dir
+void log_start_writer(const char *dir, long max_bytes, int max_files);
+
+// formatted records of the last seconds still held by the ring buffer
+std::string log_recent(double seconds);
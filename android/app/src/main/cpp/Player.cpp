@@ -4,8 +4,17 @@
 #include <time.h>
 #include <locale.h>
 #include <atomic>
+#include <mutex>
+#include <condition_variable>
+#include <chrono>
+#include <algorithm>
+#include <string>
+#include <unordered_map>
+#include <vector>
+#include <string.h>
 
 #include <mpv/client.h>
+#include "Logger.h"
 extern "C" {
 #include <libavcodec/jni.h>
 }
@@ -13,24 +22,177 @@ extern "C" {
 JavaVM *jvm;
 static jobject surface;
 
+// class, field and method ids are resolved once in JNI_OnLoad
+static struct {
+    jfieldID holder;
+
+    jclass event;
+    jfieldID type;
+    jfieldID replyUserdata;
+    jfieldID error;
+    jfieldID prop;
+    jfieldID format;
+    jfieldID flag;
+    jfieldID int64;
+    jfieldID doubleValue;
+    jfieldID string;
+    jfieldID node;
+
+    jclass boolean;
+    jmethodID booleanValueOf;
+    jclass long_;
+    jmethodID longValueOf;
+    jclass double_;
+    jmethodID doubleValueOf;
+    jclass arrayList;
+    jmethodID arrayListInit;
+    jmethodID arrayListAdd;
+    jclass hashMap;
+    jmethodID hashMapInit;
+    jmethodID hashMapPut;
+} java;
+
+// property names are few and fixed, keep one global string per name instead of one per event,
+// the index in prop_names is the interned property id used by drainEvents
+static std::mutex prop_names_lock;
+static std::unordered_map<std::string, int> prop_ids;
+static std::vector<jstring> prop_names;
+
+// a record that did not fit behind the others of a batch, per handle, it opens the next batch
+static std::mutex spilled_lock;
+static std::unordered_map<mpv_handle *, std::vector<uint8_t>> spilled;
+
+static jclass find_class(JNIEnv *env, const char *name) {
+    jclass cls = env->FindClass(name);
+    jclass ref = static_cast<jclass>(env->NewGlobalRef(cls));
+    env->DeleteLocalRef(cls);
+    return ref;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    if (vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+    jvm = vm;
+    av_jni_set_java_vm(jvm, NULL);
+
+    jclass mpv = env->FindClass("top/ourfor/lib/mpv/MPV");
+    java.holder = env->GetFieldID(mpv, "holder", "J");
+    env->DeleteLocalRef(mpv);
+
+    java.event = find_class(env, "top/ourfor/lib/mpv/MPV$Event");
+    java.type = env->GetFieldID(java.event, "type", "I");
+    java.replyUserdata = env->GetFieldID(java.event, "replyUserdata", "J");
+    java.error = env->GetFieldID(java.event, "error", "I");
+    java.prop = env->GetFieldID(java.event, "prop", "Ljava/lang/String;");
+    java.format = env->GetFieldID(java.event, "format", "I");
+    java.flag = env->GetFieldID(java.event, "flag", "Z");
+    java.int64 = env->GetFieldID(java.event, "int64", "J");
+    java.doubleValue = env->GetFieldID(java.event, "doubleValue", "D");
+    java.string = env->GetFieldID(java.event, "string", "Ljava/lang/String;");
+    java.node = env->GetFieldID(java.event, "node", "Ljava/lang/Object;");
+
+    java.boolean = find_class(env, "java/lang/Boolean");
+    java.booleanValueOf = env->GetStaticMethodID(java.boolean, "valueOf", "(Z)Ljava/lang/Boolean;");
+    java.long_ = find_class(env, "java/lang/Long");
+    java.longValueOf = env->GetStaticMethodID(java.long_, "valueOf", "(J)Ljava/lang/Long;");
+    java.double_ = find_class(env, "java/lang/Double");
+    java.doubleValueOf = env->GetStaticMethodID(java.double_, "valueOf", "(D)Ljava/lang/Double;");
+    java.arrayList = find_class(env, "java/util/ArrayList");
+    java.arrayListInit = env->GetMethodID(java.arrayList, "<init>", "(I)V");
+    java.arrayListAdd = env->GetMethodID(java.arrayList, "add", "(Ljava/lang/Object;)Z");
+    java.hashMap = find_class(env, "java/util/HashMap");
+    java.hashMapInit = env->GetMethodID(java.hashMap, "<init>", "(I)V");
+    java.hashMapPut = env->GetMethodID(java.hashMap, "put", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+
+    if (env->ExceptionCheck()) {
+        env->ExceptionClear();
+        return JNI_ERR;
+    }
+    return JNI_VERSION_1_6;
+}
+
 static void prepare_environment(JNIEnv *env) {
     setlocale(LC_NUMERIC, "C");
-    if (!env->GetJavaVM(&jvm) && jvm)
-        av_jni_set_java_vm(jvm, NULL);
 }
 
 static inline mpv_handle * get_attached_mpv(JNIEnv *env, jobject obj) {
-    jclass cls = env->GetObjectClass(obj);
-    jfieldID fid = env->GetFieldID(cls, "holder", "J");
-    return reinterpret_cast<mpv_handle *>(env->GetLongField(obj, fid));
+    return reinterpret_cast<mpv_handle *>(env->GetLongField(obj, java.holder));
 }
 
 static inline void set_attached_mpv(JNIEnv *env, jobject obj, mpv_handle *ctx) {
-    jclass cls = env->GetObjectClass(obj);
-    jfieldID fid = env->GetFieldID(cls, "holder", "J");
-    env->SetLongField(obj, fid, reinterpret_cast<jlong>(ctx));
+    env->SetLongField(obj, java.holder, reinterpret_cast<jlong>(ctx));
 }
 
+static int prop_id(JNIEnv *env, const char *name) {
+    std::lock_guard<std::mutex> guard(prop_names_lock);
+    auto it = prop_ids.find(name);
+    if (it != prop_ids.end()) return it->second;
+    jstring local = env->NewStringUTF(name);
+    jstring ref = static_cast<jstring>(env->NewGlobalRef(local));
+    env->DeleteLocalRef(local);
+    int id = static_cast<int>(prop_names.size());
+    prop_names.push_back(ref);
+    prop_ids.emplace(name, id);
+    return id;
+}
+
+static jstring prop_name(JNIEnv *env, const char *name) {
+    int id = prop_id(env, name);
+    std::lock_guard<std::mutex> guard(prop_names_lock);
+    return prop_names[id];
+}
+
+static jobject node_to_java(JNIEnv *env, const mpv_node *node) {
+    switch (node->format) {
+        case MPV_FORMAT_STRING:
+        case MPV_FORMAT_OSD_STRING:
+            return env->NewStringUTF(node->u.string);
+        case MPV_FORMAT_FLAG:
+            return env->CallStaticObjectMethod(java.boolean, java.booleanValueOf, (jboolean) (node->u.flag != 0));
+        case MPV_FORMAT_INT64:
+            return env->CallStaticObjectMethod(java.long_, java.longValueOf, (jlong) node->u.int64);
+        case MPV_FORMAT_DOUBLE:
+            return env->CallStaticObjectMethod(java.double_, java.doubleValueOf, (jdouble) node->u.double_);
+        case MPV_FORMAT_NODE_ARRAY: {
+            mpv_node_list *list = node->u.list;
+            jobject array = env->NewObject(java.arrayList, java.arrayListInit, list->num);
+            for (int i = 0; i < list->num; ++i) {
+                jobject item = node_to_java(env, &list->values[i]);
+                env->CallBooleanMethod(array, java.arrayListAdd, item);
+                env->DeleteLocalRef(item);
+            }
+            return array;
+        }
+        case MPV_FORMAT_NODE_MAP: {
+            mpv_node_list *list = node->u.list;
+            jobject map = env->NewObject(java.hashMap, java.hashMapInit, list->num * 2);
+            for (int i = 0; i < list->num; ++i) {
+                jstring key = env->NewStringUTF(list->keys[i]);
+                jobject item = node_to_java(env, &list->values[i]);
+                jobject previous = env->CallObjectMethod(map, java.hashMapPut, key, item);
+                env->DeleteLocalRef(previous);
+                env->DeleteLocalRef(key);
+                env->DeleteLocalRef(item);
+            }
+            return map;
+        }
+        case MPV_FORMAT_BYTE_ARRAY: {
+            mpv_byte_array *bytes = node->u.ba;
+            jbyteArray array = env->NewByteArray(static_cast<jsize>(bytes->size));
+            env->SetByteArrayRegion(array, 0, static_cast<jsize>(bytes->size), static_cast<const jbyte *>(bytes->data));
+            return array;
+        }
+        default:
+            return nullptr;
+    }
+}
+
+// log level requested for new handles, messages are kept natively and never reach Java as events
+static std::mutex log_level_lock;
+static std::string log_level = "warn";
 
 extern "C"
 JNIEXPORT void JNICALL
@@ -38,8 +200,8 @@ Java_top_ourfor_lib_mpv_MPV_create(JNIEnv *env, jobject self) {
     prepare_environment(env);
     mpv_handle *ctx = mpv_create();
     set_attached_mpv(env, self, ctx);
-    mpv_request_log_messages(ctx, "terminal-default");
-    mpv_set_option_string(ctx, "msg-level", "all=v");
+    std::lock_guard<std::mutex> guard(log_level_lock);
+    mpv_request_log_messages(ctx, log_level.c_str());
 }
 
 extern "C"
@@ -54,6 +216,10 @@ JNIEXPORT void JNICALL
 Java_top_ourfor_lib_mpv_MPV_destroy(JNIEnv *env, jobject self) {
     mpv_handle *ctx = get_attached_mpv(env, self);
     if (ctx) {
+        {
+            std::lock_guard<std::mutex> guard(spilled_lock);
+            spilled.erase(ctx);
+        }
         mpv_terminate_destroy(ctx);
         set_attached_mpv(env, self, nullptr);
     }
@@ -84,6 +250,86 @@ Java_top_ourfor_lib_mpv_MPV_command(JNIEnv *env, jobject self, jobjectArray cmd)
         env->ReleaseStringUTFChars((jstring)env->GetObjectArrayElement(cmd, i), arguments[i]);
 }
 
+extern "C"
+JNIEXPORT jint JNICALL
+Java_top_ourfor_lib_mpv_MPV_commandAsync(JNIEnv *env, jobject self, jlong reply_userdata,
+                                         jobjectArray cmd) {
+    mpv_handle *ctx = get_attached_mpv(env, self);
+    if (ctx == nullptr) return MPV_ERROR_UNINITIALIZED;
+    const char *arguments[128] = { 0 };
+    jstring strings[128] = { 0 };
+    int len = env->GetArrayLength(cmd);
+    if (len > 127) return MPV_ERROR_INVALID_PARAMETER;
+    for (int i = 0; i < len; ++i) {
+        strings[i] = (jstring) env->GetObjectArrayElement(cmd, i);
+        arguments[i] = env->GetStringUTFChars(strings[i], NULL);
+    }
+    // mpv copies the arguments before returning
+    int state = mpv_command_async(ctx, reply_userdata, arguments);
+    for (int i = 0; i < len; ++i) {
+        env->ReleaseStringUTFChars(strings[i], arguments[i]);
+        env->DeleteLocalRef(strings[i]);
+    }
+    return state;
+}
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_top_ourfor_lib_mpv_MPV_commandNode(JNIEnv *env, jobject self, jobjectArray cmd) {
+    mpv_handle *ctx = get_attached_mpv(env, self);
+    if (ctx == nullptr) return nullptr;
+    const char *arguments[128] = { 0 };
+    jstring strings[128] = { 0 };
+    int len = env->GetArrayLength(cmd);
+    if (len > 127) return nullptr;
+    for (int i = 0; i < len; ++i) {
+        strings[i] = (jstring) env->GetObjectArrayElement(cmd, i);
+        arguments[i] = env->GetStringUTFChars(strings[i], NULL);
+    }
+    mpv_node result;
+    int state = mpv_command_ret(ctx, arguments, &result);
+    for (int i = 0; i < len; ++i) {
+        env->ReleaseStringUTFChars(strings[i], arguments[i]);
+        env->DeleteLocalRef(strings[i]);
+    }
+    if (state < 0) return nullptr;
+    jobject value = node_to_java(env, &result);
+    mpv_free_node_contents(&result);
+    return value;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_top_ourfor_lib_mpv_MPV_setPropertyAsync(JNIEnv *env, jobject thiz, jlong reply_userdata,
+                                             jstring key, jstring value) {
+    mpv_handle *ctx = get_attached_mpv(env, thiz);
+    if (ctx == nullptr) return MPV_ERROR_UNINITIALIZED;
+    const char *prop = env->GetStringUTFChars(key, NULL);
+    const char *data = env->GetStringUTFChars(value, NULL);
+    int state = mpv_set_property_async(ctx, reply_userdata, prop, MPV_FORMAT_STRING, &data);
+    env->ReleaseStringUTFChars(key, prop);
+    env->ReleaseStringUTFChars(value, data);
+    return state;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_top_ourfor_lib_mpv_MPV_getPropertyAsync(JNIEnv *env, jobject thiz, jlong reply_userdata,
+                                             jstring key, jint format) {
+    mpv_handle *ctx = get_attached_mpv(env, thiz);
+    if (ctx == nullptr) return MPV_ERROR_UNINITIALIZED;
+    const char *prop = env->GetStringUTFChars(key, NULL);
+    int state = mpv_get_property_async(ctx, reply_userdata, prop, static_cast<mpv_format>(format));
+    env->ReleaseStringUTFChars(key, prop);
+    return state;
+}
+
+extern "C"
+JNIEXPORT jstring JNICALL
+Java_top_ourfor_lib_mpv_MPV_errorString(JNIEnv *env, jclass clazz, jint error) {
+    return env->NewStringUTF(mpv_error_string(error));
+}
+
 extern "C"
 JNIEXPORT jint JNICALL
 Java_top_ourfor_lib_mpv_MPV_setOptionString(JNIEnv *env, jobject self, jstring jname,
@@ -190,38 +436,56 @@ Java_top_ourfor_lib_mpv_MPV_observeProperty(JNIEnv *env, jobject thiz, jlong rep
 }
 
 extern "C"
-JNIEXPORT jobject JNICALL
-Java_top_ourfor_lib_mpv_MPV_waitEvent(JNIEnv *env, jobject thiz, jdouble timeout) {
+JNIEXPORT jboolean JNICALL
+Java_top_ourfor_lib_mpv_MPV_waitEvent(JNIEnv *env, jobject thiz, jobject obj, jdouble timeout) {
     mpv_handle *ctx = get_attached_mpv(env, thiz);
-    if (ctx == nullptr) return nullptr;
+    if (ctx == nullptr || obj == nullptr) return false;
     mpv_event *event = mpv_wait_event(ctx, timeout);
-
-    jclass cls = env->FindClass("top/ourfor/lib/mpv/MPV$Event");
-    if (cls == nullptr) {
-        return nullptr; // class not found
-    }
-
-    jfieldID typeFieldID = env->GetFieldID(cls, "type", "I");
-    jfieldID propFieldID = env->GetFieldID(cls, "prop", "Ljava/lang/String;");
-    jfieldID formatFieldID = env->GetFieldID(cls, "format", "I");
-    if (typeFieldID == nullptr ||
-        propFieldID == nullptr ||
-        formatFieldID == nullptr) {
-        return nullptr; // field not found
-    }
-
-    jobject obj = env->NewObject(cls, env->GetMethodID(cls, "<init>", "()V"));
-    if (obj == nullptr) {
-        return nullptr; // object not created
+    if (event->event_id == MPV_EVENT_LOG_MESSAGE) {
+        log_push(static_cast<mpv_event_log_message *>(event->data));
     }
 
-    env->SetIntField(obj, typeFieldID, reinterpret_cast<int>(event->event_id));
-    if (event->event_id == MPV_EVENT_PROPERTY_CHANGE) {
+    env->SetIntField(obj, java.type, reinterpret_cast<int>(event->event_id));
+    env->SetLongField(obj, java.replyUserdata, static_cast<jlong>(event->reply_userdata));
+    env->SetIntField(obj, java.error, event->error);
+    env->SetIntField(obj, java.format, MPV_FORMAT_NONE);
+    env->SetObjectField(obj, java.prop, nullptr);
+    env->SetObjectField(obj, java.string, nullptr);
+    env->SetObjectField(obj, java.node, nullptr);
+    if (event->event_id == MPV_EVENT_PROPERTY_CHANGE ||
+        event->event_id == MPV_EVENT_GET_PROPERTY_REPLY) {
         mpv_event_property *data = static_cast<mpv_event_property *>(event->data);
-        env->SetIntField(obj, formatFieldID, reinterpret_cast<int>(data->format));
-        env->SetObjectField(obj, propFieldID, env->NewStringUTF(data->name));
+        env->SetIntField(obj, java.format, reinterpret_cast<int>(data->format));
+        env->SetObjectField(obj, java.prop, prop_name(env, data->name));
+        if (data->data == nullptr) return true;
+        switch (data->format) {
+            case MPV_FORMAT_FLAG:
+                env->SetBooleanField(obj, java.flag, *static_cast<int *>(data->data) != 0);
+                break;
+            case MPV_FORMAT_INT64:
+                env->SetLongField(obj, java.int64, *static_cast<int64_t *>(data->data));
+                break;
+            case MPV_FORMAT_DOUBLE:
+                env->SetDoubleField(obj, java.doubleValue, *static_cast<double *>(data->data));
+                break;
+            case MPV_FORMAT_STRING:
+            case MPV_FORMAT_OSD_STRING: {
+                jstring value = env->NewStringUTF(*static_cast<char **>(data->data));
+                env->SetObjectField(obj, java.string, value);
+                env->DeleteLocalRef(value);
+                break;
+            }
+            case MPV_FORMAT_NODE: {
+                jobject value = node_to_java(env, static_cast<mpv_node *>(data->data));
+                env->SetObjectField(obj, java.node, value);
+                env->DeleteLocalRef(value);
+                break;
+            }
+            default:
+                break;
+        }
     }
-    return obj;
+    return true;
 }
 
 extern "C"
@@ -247,4 +511,324 @@ Java_top_ourfor_lib_mpv_MPV_getStringProperty(JNIEnv *env, jobject thiz, jstring
     const char *value = mpv_get_property_string(ctx, prop);
     env->ReleaseStringUTFChars(key, prop);
     return env->NewStringUTF(value);
-}
\ No newline at end of file
+}
+
+// drainEvents record layout, native byte order, every record starts 8 byte aligned:
+//   0  int32  event_id
+//   4  int32  format (MPV_FORMAT_NONE unless MPV_EVENT_PROPERTY_CHANGE or MPV_EVENT_GET_PROPERTY_REPLY)
+//   8  int64  reply_userdata
+//  16  int32  interned property id, -1 when the event has no property
+//  20  int32  payload length
+//  24  int64  inline value: flag (0/1), int64 or the bits of a double
+//  32  int32  error, set for the reply events of async requests
+//  36  int32  reserved
+//  40  bytes  utf-8 payload for string formats or the encoded MPV_FORMAT_NODE value, padded to 8 bytes
+// an encoded node is one byte with its mpv_format followed by
+//   STRING: int32 length, utf-8 bytes     FLAG: int8     INT64: int64     DOUBLE: double
+//   NODE_ARRAY: int32 count, the values   NODE_MAP: int32 count, per entry int32 key length, key bytes, value
+//   BYTE_ARRAY: int32 length, bytes       anything else: nothing
+static const int EVENT_RECORD_HEADER = 40;
+
+static inline int align8(int n) {
+    return (n + 7) & ~7;
+}
+
+static size_t node_size(const mpv_node *node) {
+    switch (node->format) {
+        case MPV_FORMAT_STRING:
+        case MPV_FORMAT_OSD_STRING:
+            return 1 + 4 + strlen(node->u.string);
+        case MPV_FORMAT_FLAG:
+            return 1 + 1;
+        case MPV_FORMAT_INT64:
+        case MPV_FORMAT_DOUBLE:
+            return 1 + 8;
+        case MPV_FORMAT_NODE_ARRAY:
+        case MPV_FORMAT_NODE_MAP: {
+            mpv_node_list *list = node->u.list;
+            size_t size = 1 + 4;
+            for (int i = 0; i < list->num; ++i) {
+                if (node->format == MPV_FORMAT_NODE_MAP) size += 4 + strlen(list->keys[i]);
+                size += node_size(&list->values[i]);
+            }
+            return size;
+        }
+        case MPV_FORMAT_BYTE_ARRAY:
+            return 1 + 4 + node->u.ba->size;
+        default:
+            return 1;
+    }
+}
+
+static uint8_t *write_bytes(uint8_t *out, const void *data, size_t length) {
+    int32_t size = static_cast<int32_t>(length);
+    memcpy(out, &size, 4);
+    memcpy(out + 4, data, length);
+    return out + 4 + length;
+}
+
+// writes the node_size bytes of the node at out, returns the end
+static uint8_t *write_node(const mpv_node *node, uint8_t *out) {
+    *out++ = static_cast<uint8_t>(node->format);
+    switch (node->format) {
+        case MPV_FORMAT_STRING:
+        case MPV_FORMAT_OSD_STRING:
+            return write_bytes(out, node->u.string, strlen(node->u.string));
+        case MPV_FORMAT_FLAG:
+            *out = node->u.flag != 0;
+            return out + 1;
+        case MPV_FORMAT_INT64:
+            memcpy(out, &node->u.int64, 8);
+            return out + 8;
+        case MPV_FORMAT_DOUBLE:
+            memcpy(out, &node->u.double_, 8);
+            return out + 8;
+        case MPV_FORMAT_NODE_ARRAY:
+        case MPV_FORMAT_NODE_MAP: {
+            mpv_node_list *list = node->u.list;
+            int32_t count = list->num;
+            memcpy(out, &count, 4);
+            out += 4;
+            for (int i = 0; i < list->num; ++i) {
+                if (node->format == MPV_FORMAT_NODE_MAP) out = write_bytes(out, list->keys[i], strlen(list->keys[i]));
+                out = write_node(&list->values[i], out);
+            }
+            return out;
+        }
+        case MPV_FORMAT_BYTE_ARRAY:
+            return write_bytes(out, node->u.ba->data, node->u.ba->size);
+        default:
+            return out;
+    }
+}
+
+// writes the record of the event at out and returns its size, a record larger than remaining
+// is written to spill instead and 0 is returned
+static int write_event(JNIEnv *env, const mpv_event *event, uint8_t *out, int remaining, std::vector<uint8_t> &spill) {
+    int32_t format = MPV_FORMAT_NONE;
+    int32_t prop = -1;
+    int32_t length = 0;
+    int64_t value = 0;
+    const char *text = nullptr;
+    const mpv_node *node = nullptr;
+    if (event->event_id == MPV_EVENT_PROPERTY_CHANGE ||
+        event->event_id == MPV_EVENT_GET_PROPERTY_REPLY) {
+        mpv_event_property *data = static_cast<mpv_event_property *>(event->data);
+        format = data->format;
+        prop = prop_id(env, data->name);
+        if (data->data != nullptr) {
+            switch (data->format) {
+                case MPV_FORMAT_FLAG:
+                    value = *static_cast<int *>(data->data) != 0;
+                    break;
+                case MPV_FORMAT_INT64:
+                    value = *static_cast<int64_t *>(data->data);
+                    break;
+                case MPV_FORMAT_DOUBLE:
+                    memcpy(&value, data->data, sizeof(double));
+                    break;
+                case MPV_FORMAT_STRING:
+                case MPV_FORMAT_OSD_STRING:
+                    text = *static_cast<char **>(data->data);
+                    length = static_cast<int32_t>(strlen(text));
+                    break;
+                case MPV_FORMAT_NODE:
+                    node = static_cast<mpv_node *>(data->data);
+                    length = static_cast<int32_t>(node_size(node));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    int size = EVENT_RECORD_HEADER + align8(length);
+    uint8_t *record = out;
+    if (size > remaining) {
+        spill.assign(size, 0);
+        record = spill.data();
+    }
+
+    int32_t type = event->event_id;
+    int64_t userdata = static_cast<int64_t>(event->reply_userdata);
+    memcpy(record, &type, 4);
+    memcpy(record + 4, &format, 4);
+    memcpy(record + 8, &userdata, 8);
+    memcpy(record + 16, &prop, 4);
+    memcpy(record + 20, &length, 4);
+    memcpy(record + 24, &value, 8);
+    int32_t error = event->error;
+    int32_t reserved = 0;
+    memcpy(record + 32, &error, 4);
+    memcpy(record + 36, &reserved, 4);
+    if (text != nullptr) memcpy(record + EVENT_RECORD_HEADER, text, length);
+    if (node != nullptr) write_node(node, record + EVENT_RECORD_HEADER);
+    return size > remaining ? 0 : size;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_top_ourfor_lib_mpv_MPV_drainEvents(JNIEnv *env, jobject thiz, jobject buffer, jdouble timeout) {
+    mpv_handle *ctx = get_attached_mpv(env, thiz);
+    if (ctx == nullptr) return -1;
+    uint8_t *base = static_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+    jlong capacity = env->GetDirectBufferCapacity(buffer);
+    if (base == nullptr || capacity < EVENT_RECORD_HEADER) return -1;
+
+    int count = 0;
+    int offset = 0;
+    double wait = timeout;
+    {
+        std::lock_guard<std::mutex> guard(spilled_lock);
+        auto it = spilled.find(ctx);
+        if (it != spilled.end()) {
+            // larger than the whole buffer, the caller grows it to this size and drains again
+            if (static_cast<jlong>(it->second.size()) > capacity) return -static_cast<jint>(it->second.size());
+            memcpy(base, it->second.data(), it->second.size());
+            offset = static_cast<int>(it->second.size());
+            count = 1;
+            wait = 0;
+            spilled.erase(it);
+        }
+    }
+    // only pop another event while a header still fits, an event whose payload does not is kept for the next call
+    std::vector<uint8_t> spill;
+    while (capacity - offset >= EVENT_RECORD_HEADER) {
+        mpv_event *event = mpv_wait_event(ctx, wait);
+        wait = 0;
+        if (event->event_id == MPV_EVENT_NONE) break;
+        if (event->event_id == MPV_EVENT_LOG_MESSAGE) {
+            log_push(static_cast<mpv_event_log_message *>(event->data));
+            continue;
+        }
+        int size = write_event(env, event, base + offset, static_cast<int>(capacity - offset), spill);
+        if (size == 0) {
+            std::lock_guard<std::mutex> guard(spilled_lock);
+            jint needed = static_cast<jint>(spill.size());
+            spilled[ctx] = std::move(spill);
+            return count > 0 ? count : -needed;
+        }
+        offset += size;
+        count++;
+        if (event->event_id == MPV_EVENT_SHUTDOWN) break;
+    }
+    return count;
+}
+
+extern "C"
+JNIEXPORT jstring JNICALL
+Java_top_ourfor_lib_mpv_MPV_propertyName(JNIEnv *env, jclass clazz, jint id) {
+    std::lock_guard<std::mutex> guard(prop_names_lock);
+    if (id < 0 || id >= static_cast<jint>(prop_names.size())) return nullptr;
+    return static_cast<jstring>(env->NewLocalRef(prop_names[id]));
+}
+
+extern "C"
+JNIEXPORT jobject JNICALL
+Java_top_ourfor_lib_mpv_MPV_getNodeProperty(JNIEnv *env, jobject thiz, jstring key) {
+    mpv_handle *ctx = get_attached_mpv(env, thiz);
+    if (ctx == nullptr) return nullptr;
+    mpv_node node;
+    const char *prop = env->GetStringUTFChars(key, NULL);
+    int state = mpv_get_property(ctx, prop, MPV_FORMAT_NODE, &node);
+    env->ReleaseStringUTFChars(key, prop);
+    if (state < 0) return nullptr;
+    jobject value = node_to_java(env, &node);
+    mpv_free_node_contents(&node);
+    return value;
+}
+
+// wakeup callbacks of every handle feed one queue, the shared event dispatcher waits on it
+static std::mutex wakeup_lock;
+static std::condition_variable wakeup_cond;
+static std::vector<int64_t> woken;
+
+static void push_wakeup(int64_t id) {
+    {
+        std::lock_guard<std::mutex> guard(wakeup_lock);
+        for (int64_t item : woken) {
+            if (item == id) return;
+        }
+        woken.push_back(id);
+    }
+    wakeup_cond.notify_one();
+}
+
+// called by mpv on its own threads, must return quickly and must not call back into mpv
+static void on_wakeup(void *data) {
+    push_wakeup(static_cast<int64_t>(reinterpret_cast<intptr_t>(data)));
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_top_ourfor_lib_mpv_MPV_setWakeupId(JNIEnv *env, jobject thiz, jlong id) {
+    mpv_handle *ctx = get_attached_mpv(env, thiz);
+    if (ctx == nullptr) return;
+    if (id == 0) {
+        mpv_set_wakeup_callback(ctx, nullptr, nullptr);
+    } else {
+        mpv_set_wakeup_callback(ctx, on_wakeup, reinterpret_cast<void *>(static_cast<intptr_t>(id)));
+    }
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_top_ourfor_lib_mpv_MPV_wakeup(JNIEnv *env, jclass clazz, jlong id) {
+    push_wakeup(id);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_top_ourfor_lib_mpv_MPV_awaitWakeup(JNIEnv *env, jclass clazz, jlongArray ids, jdouble timeout) {
+    std::unique_lock<std::mutex> guard(wakeup_lock);
+    if (woken.empty()) {
+        if (timeout < 0) {
+            wakeup_cond.wait(guard, [] { return !woken.empty(); });
+        } else if (timeout > 0) {
+            auto duration = std::chrono::duration<double>(timeout);
+            wakeup_cond.wait_for(guard, duration, [] { return !woken.empty(); });
+        }
+    }
+    int count = std::min(static_cast<int>(woken.size()), static_cast<int>(env->GetArrayLength(ids)));
+    if (count == 0) return 0;
+    env->SetLongArrayRegion(ids, 0, count, reinterpret_cast<const jlong *>(woken.data()));
+    woken.erase(woken.begin(), woken.begin() + count);
+    return count;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_top_ourfor_lib_mpv_MPV_setDefaultLogLevel(JNIEnv *env, jclass clazz, jstring level) {
+    const char *value = env->GetStringUTFChars(level, NULL);
+    {
+        std::lock_guard<std::mutex> guard(log_level_lock);
+        log_level = value;
+    }
+    env->ReleaseStringUTFChars(level, value);
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_top_ourfor_lib_mpv_MPV_setLogLevel(JNIEnv *env, jobject thiz, jstring level) {
+    mpv_handle *ctx = get_attached_mpv(env, thiz);
+    if (ctx == nullptr) return MPV_ERROR_UNINITIALIZED;
+    const char *value = env->GetStringUTFChars(level, NULL);
+    int state = mpv_request_log_messages(ctx, value);
+    env->ReleaseStringUTFChars(level, value);
+    return state;
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_top_ourfor_lib_mpv_MPV_startLogWriter(JNIEnv *env, jclass clazz, jstring dir, jlong max_bytes,
+                                           jint max_files) {
+    const char *path = env->GetStringUTFChars(dir, NULL);
+    log_start_writer(path, static_cast<long>(max_bytes), max_files);
+    env->ReleaseStringUTFChars(dir, path);
+}
+
+extern "C"
+JNIEXPORT jstring JNICALL
+Java_top_ourfor_lib_mpv_MPV_recentLogs(JNIEnv *env, jclass clazz, jdouble seconds) {
+    std::string logs = log_recent(seconds);
+    return env->NewStringUTF(logs.c_str());
+}
@@ -0,0 +1,221 @@
+package top.ourfor.app.iPlayClient;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts bundled assets the player reads from disk (subtitle fallback font, later shaders, scripts, config)
+ * into a target directory once, in the background.
+ * A manifest next to the files keeps the apk install time and the sha-256 and size of every extracted asset.
+ * While the apk is unchanged nothing is read, after an update an asset is only rewritten when its hash changed.
+ * Files are streamed into a temp file through nio channels and renamed into place, a reader never sees a partial file.
+ */
+public class AssetExtractor {
+    private static final String TAG = "AssetExtractor";
+    private static final String MANIFEST = "assets.manifest";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static AssetExtractor shared;
+
+    private final ArrayList<String> assets = new ArrayList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "asset-extractor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public static synchronized AssetExtractor shared() {
+        if (shared == null) {
+            shared = new AssetExtractor();
+            shared.register("subfont.ttf");
+        }
+        return shared;
+    }
+
+    // assets added after extract started are picked up on the next launch
+    public synchronized void register(String asset) {
+        if (!assets.contains(asset)) assets.add(asset);
+    }
+
+    public void extractAsync(Context context, String targetDir) {
+        executor.execute(() -> extract(context, targetDir));
+    }
+
+    // extracts on the calling thread
+    public void extract(Context context, String targetDir) {
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(assets);
+        }
+        long start = System.nanoTime();
+        try {
+            extract(context, new File(targetDir), names);
+        } finally {
+            done.countDown();
+        }
+        Log.d(TAG, "extract " + names.size() + " assets in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    // for callers that need an asset on disk right away, returns false on timeout
+    public boolean await(long millis) {
+        try {
+            return done.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void extract(Context context, File dir, List<String> names) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.d(TAG, "create dir failed: " + dir.getPath());
+            return;
+        }
+        String version = installVersion(context);
+        File manifestFile = new File(dir, MANIFEST);
+        HashMap<String, String> previous = load(manifestFile);
+        boolean updated = !version.equals(previous.get(""));
+        HashMap<String, String> manifest = updated ? new HashMap<>() : new HashMap<>(previous);
+        manifest.put("", version);
+        boolean changed = updated;
+
+        AssetManager assetManager = context.getAssets();
+        for (String name : names) {
+            File target = new File(dir, name);
+            String recorded = previous.get(name);
+            // unchanged apk, the extracted file is trusted as long as it is there with the recorded size
+            if (!updated && recorded != null && target.length() == size(recorded)) continue;
+            try {
+                String hash = hash(assetManager, name);
+                if (recorded == null || !recorded.startsWith(hash + " ") || target.length() != size(recorded)) {
+                    copy(assetManager, name, target);
+                }
+                manifest.put(name, hash + " " + target.length());
+            } catch (IOException e) {
+                Log.d(TAG, name + ": " + e);
+                manifest.remove(name);
+            }
+            changed = true;
+        }
+        if (changed) save(manifestFile, manifest);
+    }
+
+    private static String installVersion(Context context) {
+        try {
+            return String.valueOf(context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime);
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+
+    private static long size(String entry) {
+        int space = entry.indexOf(' ');
+        try {
+            return space > 0 ? Long.parseLong(entry.substring(space + 1)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String hash(AssetManager assetManager, String name) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (InputStream in = assetManager.open(name, AssetManager.ACCESS_STREAMING);
+             ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void copy(AssetManager assetManager, String name, File target) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        try (InputStream in = assetManager.open(name, AssetManager.ACCESS_STREAMING);
+             ReadableByteChannel source = Channels.newChannel(in);
+             FileOutputStream out = new FileOutputStream(temp);
+             FileChannel channel = out.getChannel()) {
+            long position = 0;
+            long count;
+            while ((count = channel.transferFrom(source, position, BUFFER_SIZE)) > 0) {
+                position += count;
+            }
+            channel.force(false);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("rename failed: " + target.getPath());
+        }
+        Log.d(TAG, "extracted " + name + " to " + target.getPath());
+    }
+
+    // name -> "sha256 size", the empty key holds the apk install time
+    private static HashMap<String, String> load(File manifestFile) {
+        HashMap<String, String> manifest = new HashMap<>();
+        if (!manifestFile.exists()) return manifest;
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifestFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) continue;
+                manifest.put(line.substring(0, tab), line.substring(tab + 1));
+            }
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    private static void save(File manifestFile, Map<String, String> manifest) {
+        File temp = new File(manifestFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            for (Map.Entry<String, String> entry : manifest.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        }
+        if (!temp.renameTo(manifestFile)) {
+            Log.d(TAG, "replace manifest failed: " + manifestFile.getPath());
+        }
+    }
+}
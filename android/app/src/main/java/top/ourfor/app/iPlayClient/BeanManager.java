@@ -1,41 +1,73 @@
 package top.ourfor.app.iPlayClient;
 
-import android.os.Build;
-
-import java.lang.ref.WeakReference;
-import java.util.WeakHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Registry of shared services keyed by class, readable from any thread.
+ * Reads are lock-free lookups on the class identity hash, every bean belongs to a scope so beans of an
+ * activity or a player session can be dropped together when it ends.
+ */
 public class BeanManager {
-    private static WeakHashMap<String, WeakReference> beans = new WeakHashMap<>(20);
+    public enum Scope {
+        APPLICATION,
+        ACTIVITY,
+        PLAYER
+    }
 
-    public static <T> T get(Class<?> clazz) {
-        WeakReference<T> ref = null;
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
-            ref = beans.get(clazz.getTypeName());
+    private static class Bean {
+        final Object value;
+        final Scope scope;
+
+        Bean(Object value, Scope scope) {
+            this.value = value;
+            this.scope = scope;
         }
-        return ref != null ? ref.get() : null;
     }
 
-    public static <T> void set(Class<?> clazz, T bean) {
-        WeakReference<T> ref = new WeakReference(bean);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            beans.put(clazz.getTypeName(), ref);
-        }
+    private static final ConcurrentHashMap<Class<?>, Bean> beans = new ConcurrentHashMap<>(32);
+
+    public static <T> T get(Class<T> clazz) {
+        Bean bean = beans.get(clazz);
+        return bean != null ? clazz.cast(bean.value) : null;
+    }
+
+    public static <T> void set(Class<? super T> clazz, T bean) {
+        set(clazz, bean, Scope.APPLICATION);
+    }
+
+    public static <T> void set(Class<? super T> clazz, T bean, Scope scope) {
+        beans.put(clazz, new Bean(bean, scope));
     }
 
     public static <T> void set(Class<?>[] clazzs, T bean) {
-        WeakReference<T> ref = new WeakReference(bean);
+        Bean entry = new Bean(bean, Scope.APPLICATION);
         for (Class<?> clazz : clazzs) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                beans.put(clazz.getTypeName(), ref);
+            if (!clazz.isInstance(bean)) {
+                throw new ClassCastException(bean.getClass().getName() + " is not a " + clazz.getName());
             }
+            beans.put(clazz, entry);
         }
     }
 
-    public static <T> void remove(Class<?>[] clazzs) {
+    public static void remove(Class<?>[] clazzs) {
         for (Class<?> clazz : clazzs) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                beans.remove(clazz.getTypeName());
+            beans.remove(clazz);
+        }
+    }
+
+    // only removes the bean when it is still the registered one, a newer owner is left alone
+    public static void remove(Class<?> clazz, Object bean) {
+        Bean entry = beans.get(clazz);
+        if (entry != null && entry.value == bean) {
+            beans.remove(clazz, entry);
+        }
+    }
+
+    public static void clear(Scope scope) {
+        for (Map.Entry<Class<?>, Bean> entry : beans.entrySet()) {
+            if (entry.getValue().scope == scope) {
+                beans.remove(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -0,0 +1,380 @@
+package top.ourfor.app.iPlayClient;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads media for offline playback over several range connections per file.
+ * Tasks run in the order they were added, at most maxActive at a time, each with up to connectionsPerTask
+ * workers writing their chunks with positional writes into the preallocated file. One token bucket limits the
+ * bandwidth of all workers together. Unfinished tasks are restored paused from their sidecars.
+ */
+public class DownloadManager {
+    public interface Listener {
+        // called on the progress thread about twice per second for tasks that changed, and on every state change
+        void onProgress(DownloadTask task);
+    }
+
+    private static final String TAG = "DownloadManager";
+    private static final int TIMEOUT = 15_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAILURES = 5;
+    private static final long TICK = 500;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+    private static DownloadManager shared;
+
+    private final LinkedHashMap<String, DownloadTask> tasks = new LinkedHashMap<>();
+    private final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "download-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "download-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private File dir;
+    private int maxActive = 2;
+    private int connectionsPerTask = 4;
+    private long bytesPerSecond = 0;
+    private double tokens;
+    private long refilled = System.nanoTime();
+    private volatile Listener listener;
+
+    public static synchronized DownloadManager shared() {
+        if (shared == null) {
+            shared = new DownloadManager();
+        }
+        return shared;
+    }
+
+    private DownloadManager() {
+        ticker.scheduleWithFixedDelay(this::tick, TICK, TICK, TimeUnit.MILLISECONDS);
+    }
+
+    // restores unfinished downloads of the directory as paused tasks
+    public synchronized void setDirectory(File dir) {
+        if (dir.equals(this.dir)) return;
+        this.dir = dir;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.d(TAG, "create download dir failed: " + dir.getPath());
+        }
+        File[] sidecars = dir.listFiles(f -> f.getName().endsWith(".part"));
+        if (sidecars == null) return;
+        for (File sidecar : sidecars) {
+            String name = sidecar.getName();
+            File file = new File(dir, name.substring(0, name.length() - 5));
+            DownloadTask task = DownloadTask.restore(file.getName(), file);
+            if (task != null && !tasks.containsKey(task.id)) tasks.put(task.id, task);
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void setLimits(int maxActive, int connectionsPerTask, long bytesPerSecond) {
+        this.maxActive = Math.max(1, maxActive);
+        this.connectionsPerTask = Math.max(1, connectionsPerTask);
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        schedule();
+    }
+
+    // the id is the file name inside the download directory
+    public synchronized DownloadTask start(String id, String url) {
+        DownloadTask task = tasks.get(id);
+        if (task == null) {
+            task = new DownloadTask(id, url, new File(dir, id));
+            tasks.put(id, task);
+        } else {
+            // the same media with fresh credentials
+            task.url = url;
+            if (task.state == DownloadTask.State.COMPLETED || task.state == DownloadTask.State.RUNNING) return task;
+        }
+        task.state = DownloadTask.State.QUEUED;
+        task.error = null;
+        publish(task);
+        schedule();
+        return task;
+    }
+
+    public synchronized void pause(String id) {
+        DownloadTask task = tasks.get(id);
+        if (task == null || task.state == DownloadTask.State.COMPLETED) return;
+        task.state = DownloadTask.State.PAUSED;
+        publish(task);
+        schedule();
+    }
+
+    public synchronized void resume(String id) {
+        DownloadTask task = tasks.get(id);
+        if (task == null || task.state == DownloadTask.State.COMPLETED || task.state == DownloadTask.State.RUNNING) return;
+        task.state = DownloadTask.State.QUEUED;
+        task.error = null;
+        publish(task);
+        schedule();
+    }
+
+    public synchronized void remove(String id) {
+        DownloadTask task = tasks.remove(id);
+        if (task == null) return;
+        task.state = DownloadTask.State.PAUSED;
+        task.discard();
+        schedule();
+    }
+
+    public synchronized List<DownloadTask> tasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    // starts queued tasks while there is room, called whenever a task changed state;
+    // a task paused and resumed quickly waits until the workers of its last run left
+    private void schedule() {
+        int active = 0;
+        for (DownloadTask task : tasks.values()) {
+            if (task.state == DownloadTask.State.RUNNING) active++;
+        }
+        for (DownloadTask task : tasks.values()) {
+            if (active >= maxActive) break;
+            if (task.state != DownloadTask.State.QUEUED || task.workers > 0) continue;
+            task.state = DownloadTask.State.RUNNING;
+            task.workers = 1;
+            active++;
+            publish(task);
+            workers.execute(() -> run(task));
+        }
+    }
+
+    private void run(DownloadTask task) {
+        try {
+            if (!task.prepared()) probe(task);
+        } catch (IOException e) {
+            fail(task, e);
+            leave(task);
+            return;
+        }
+        if (task.finished()) {
+            finish(task);
+            leave(task);
+            return;
+        }
+        int count = 0;
+        synchronized (this) {
+            if (task.state == DownloadTask.State.RUNNING) {
+                count = task.ranges ? Math.min(connectionsPerTask, task.chunks()) : 1;
+                task.workers += count;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            workers.execute(() -> work(task));
+        }
+        leave(task);
+    }
+
+    // the runner or a worker of the task is done, the last one out closes the files and lets the task run again
+    private synchronized void leave(DownloadTask task) {
+        if (--task.workers > 0) return;
+        if (task.state != DownloadTask.State.RUNNING) task.close();
+        schedule();
+    }
+
+    private void probe(DownloadTask task) throws IOException {
+        HttpURLConnection connection = connect(task.url, "bytes=0-0");
+        try {
+            int code = connection.getResponseCode();
+            long length = -1;
+            boolean ranges = false;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+                if (matcher.matches()) {
+                    length = Long.parseLong(matcher.group(1));
+                    ranges = true;
+                }
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                // -1 without a Content-Length, the file is then fetched until the response ends
+                length = contentLength(connection);
+            } else {
+                throw new IOException("unexpected response " + code);
+            }
+            if (ranges && length < 0) throw new IOException("unexpected response " + code);
+            task.prepare(length, ranges);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void work(DownloadTask task) {
+        int failures = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (task.state == DownloadTask.State.RUNNING) {
+            int chunk = task.claim();
+            if (chunk < 0) break;
+            try {
+                fetch(task, chunk, buffer);
+                if (task.complete(chunk)) {
+                    finish(task);
+                    break;
+                }
+                failures = 0;
+            } catch (IOException e) {
+                task.release(chunk);
+                if (task.state != DownloadTask.State.RUNNING) break;
+                Log.d(TAG, task.id + " chunk " + chunk + ": " + e);
+                if (++failures >= MAX_FAILURES) {
+                    fail(task, e);
+                    break;
+                }
+                sleep(1000L * failures);
+            }
+        }
+        leave(task);
+    }
+
+    // the chunk is complete when it returns normally, bytes of a failed chunk are taken back from the progress
+    private void fetch(DownloadTask task, int chunk, byte[] buffer) throws IOException {
+        long start = task.chunkStart(chunk);
+        long length = task.chunkLength(chunk);
+        HttpURLConnection connection = connect(task.url, task.ranges ? "bytes=" + start + "-" + (start + length - 1) : null);
+        long written = 0;
+        try {
+            int code = connection.getResponseCode();
+            if (code != (task.ranges ? HttpURLConnection.HTTP_PARTIAL : HttpURLConnection.HTTP_OK)) {
+                throw new IOException("unexpected response " + code);
+            }
+            FileChannel channel = task.channel();
+            InputStream in = connection.getInputStream();
+            // a chunk of unknown length ends with the response
+            while (length < 0 || written < length) {
+                if (task.state != DownloadTask.State.RUNNING) throw new IOException("paused");
+                int count = in.read(buffer, 0, (int) (length < 0 ? buffer.length : Math.min(buffer.length, length - written)));
+                if (count < 0) {
+                    if (length >= 0) throw new IOException("short read");
+                    task.setLength(written);
+                    break;
+                }
+                throttle(count);
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                long position = start + written;
+                while (data.hasRemaining()) {
+                    position += channel.write(data, position);
+                }
+                written += count;
+                task.downloaded.addAndGet(count);
+            }
+        } catch (IOException e) {
+            task.downloaded.addAndGet(-written);
+            throw e;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // token bucket shared by all workers, a burst of at most one second
+    private void throttle(int bytes) {
+        while (true) {
+            long wait;
+            synchronized (this) {
+                if (bytesPerSecond <= 0) return;
+                long now = System.nanoTime();
+                tokens = Math.min(bytesPerSecond, tokens + (now - refilled) / 1e9 * bytesPerSecond);
+                refilled = now;
+                if (tokens >= bytes || tokens >= bytesPerSecond) {
+                    tokens -= bytes;
+                    return;
+                }
+                wait = (long) ((bytes - tokens) * 1000 / bytesPerSecond);
+            }
+            sleep(Math.max(wait, 1));
+        }
+    }
+
+    private void finish(DownloadTask task) {
+        task.close();
+        task.sidecar.delete();
+        synchronized (this) {
+            task.state = DownloadTask.State.COMPLETED;
+            publish(task);
+            schedule();
+        }
+        Log.d(TAG, "completed " + task.id);
+    }
+
+    private void fail(DownloadTask task, IOException e) {
+        Log.d(TAG, "failed " + task.id + ": " + e);
+        synchronized (this) {
+            if (task.state != DownloadTask.State.RUNNING) return;
+            task.state = DownloadTask.State.FAILED;
+            task.error = e.getMessage();
+            publish(task);
+            schedule();
+        }
+    }
+
+    private void tick() {
+        Listener listener = this.listener;
+        for (DownloadTask task : tasks()) {
+            long downloaded = task.downloaded.get();
+            if (downloaded == task.lastDownloaded) continue;
+            task.speed = (downloaded - task.lastDownloaded) * 1000.0 / TICK;
+            task.lastDownloaded = downloaded;
+            if (listener != null) listener.onProgress(task);
+        }
+    }
+
+    private void publish(DownloadTask task) {
+        Listener listener = this.listener;
+        if (listener != null) ticker.execute(() -> listener.onProgress(task));
+    }
+
+    // getContentLength is an int and gives -1 above 2 GiB, getContentLengthLong needs API 24
+    private static long contentLength(HttpURLConnection connection) {
+        String value = connection.getHeaderField("Content-Length");
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static HttpURLConnection connect(String url, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        if (range != null) connection.setRequestProperty("Range", range);
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package top.ourfor.app.iPlayClient;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.io.File;
+import java.util.Locale;
+
+public class DownloadModule extends ReactContextBaseJavaModule {
+    static private String moduleName = "DownloadModule";
+    static private String progressEvent = "onDownloadProgress";
+
+    DownloadModule(ReactApplicationContext context) {
+        super(context);
+        DownloadManager manager = DownloadManager.shared();
+        manager.setDirectory(new File(getDownloadPath(context)));
+        manager.setListener(task -> {
+            if (!context.hasActiveReactInstance()) return;
+            context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(progressEvent, toMap(task));
+        });
+    }
+
+    public static String getDownloadPath(Context context) {
+        File filesDir = context.getExternalFilesDir("");
+        File downloadDir = new File(filesDir, "download");
+        return downloadDir.getPath();
+    }
+
+    static WritableMap toMap(DownloadTask task) {
+        WritableMap map = Arguments.createMap();
+        map.putString("id", task.id);
+        map.putString("path", task.file.getPath());
+        map.putString("state", task.state.name().toLowerCase(Locale.ROOT));
+        map.putDouble("length", task.length);
+        map.putDouble("downloaded", task.downloaded.get());
+        map.putDouble("speed", task.speed);
+        if (task.error != null) map.putString("error", task.error);
+        return map;
+    }
+
+    // resolves the local path, play it with IntentModule.playFile once the state is completed
+    @ReactMethod
+    public void start(String id, String url, Promise promise) {
+        if (id.contains("/") || id.endsWith(".part")) {
+            promise.reject("invalid_id", "download id must be a plain file name");
+            return;
+        }
+        DownloadTask task = DownloadManager.shared().start(id, url);
+        promise.resolve(task.file.getPath());
+    }
+
+    @ReactMethod
+    public void pause(String id) {
+        DownloadManager.shared().pause(id);
+    }
+
+    @ReactMethod
+    public void resume(String id) {
+        DownloadManager.shared().resume(id);
+    }
+
+    @ReactMethod
+    public void remove(String id) {
+        DownloadManager.shared().remove(id);
+    }
+
+    // bytesPerSecond 0 means unlimited
+    @ReactMethod
+    public void setLimits(int maxActive, int connectionsPerTask, double bytesPerSecond) {
+        DownloadManager.shared().setLimits(maxActive, connectionsPerTask, (long) bytesPerSecond);
+    }
+
+    @ReactMethod
+    public void list(Promise promise) {
+        WritableArray array = Arguments.createArray();
+        for (DownloadTask task : DownloadManager.shared().tasks()) {
+            array.pushMap(toMap(task));
+        }
+        promise.resolve(array);
+    }
+
+    // required by NativeEventEmitter
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return moduleName;
+    }
+}
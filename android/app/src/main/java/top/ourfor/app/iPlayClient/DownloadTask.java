@@ -0,0 +1,222 @@
+package top.ourfor.app.iPlayClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One download: the preallocated target file and a sidecar with the progress bitmap.
+ * The file is split into fixed-size chunks that workers claim and fetch with their own range request,
+ * a finished chunk sets its bit in memory and in the sidecar with a single byte write, so after process
+ * death only the chunks in flight are fetched again. A server without ranges gives one chunk of the whole file,
+ * its length is -1 when the server did not send one either and the file grows until the response ends.
+ */
+class DownloadTask {
+    enum State {
+        QUEUED,
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        FAILED
+    }
+
+    static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAGIC = 0x4950444c;
+    // version 1 stored the chunk size as an int
+    private static final int VERSION = 2;
+
+    final String id;
+    final File file;
+    final File sidecar;
+    volatile String url;
+    long length = -1;
+    long chunkSize = CHUNK_SIZE;
+    boolean ranges = true;
+    volatile State state = State.QUEUED;
+    volatile String error;
+    final AtomicLong downloaded = new AtomicLong();
+    // bytes at the last progress tick, for the speed
+    long lastDownloaded;
+    double speed;
+    // the runner and chunk workers still alive, the task is not started again before they all left
+    int workers;
+
+    private byte[] bitmap;
+    private boolean[] inflight;
+    private int bitmapOffset;
+    private int done;
+    private int cursor;
+    private RandomAccessFile sidecarFile;
+    private RandomAccessFile dataFile;
+    // set by discard, no file is opened or created afterwards
+    private boolean removed;
+
+    DownloadTask(String id, String url, File file) {
+        this.id = id;
+        this.url = url;
+        this.file = file;
+        this.sidecar = new File(file.getPath() + ".part");
+    }
+
+    int chunks() {
+        if (length < 0) return 1;
+        return (int) ((length + chunkSize - 1) / chunkSize);
+    }
+
+    // preallocates the file and writes a fresh sidecar once the length is known, length is -1 only without ranges
+    synchronized void prepare(long length, boolean ranges) throws IOException {
+        if (removed) throw new IOException("removed");
+        this.length = length;
+        this.ranges = ranges;
+        // without range support the whole file is one chunk that has to be fetched in one go
+        this.chunkSize = ranges ? CHUNK_SIZE : Math.max(length, 1);
+        bitmap = new byte[(chunks() + 7) / 8];
+        inflight = new boolean[chunks()];
+        done = 0;
+        cursor = 0;
+        downloaded.set(0);
+        close();
+        try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+            data.setLength(Math.max(length, 0));
+        }
+        sidecarFile = new RandomAccessFile(sidecar, "rw");
+        sidecarFile.setLength(0);
+        sidecarFile.writeInt(MAGIC);
+        sidecarFile.writeInt(VERSION);
+        sidecarFile.writeLong(length);
+        sidecarFile.writeLong(chunkSize);
+        sidecarFile.writeBoolean(ranges);
+        sidecarFile.writeUTF(url);
+        bitmapOffset = (int) sidecarFile.getFilePointer();
+        sidecarFile.write(bitmap);
+        sidecarFile.getFD().sync();
+    }
+
+    // restores a task from its sidecar, null when there is none or it is unreadable
+    static DownloadTask restore(String id, File file) {
+        File sidecar = new File(file.getPath() + ".part");
+        if (!sidecar.exists() || !file.exists()) return null;
+        try (RandomAccessFile in = new RandomAccessFile(sidecar, "r")) {
+            if (in.readInt() != MAGIC) return null;
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) return null;
+            long length = in.readLong();
+            long chunkSize = version == 1 ? in.readInt() : in.readLong();
+            boolean ranges = in.readBoolean();
+            String url = in.readUTF();
+            DownloadTask task = new DownloadTask(id, url, file);
+            task.length = length;
+            task.chunkSize = chunkSize;
+            task.ranges = ranges;
+            task.bitmapOffset = (int) in.getFilePointer();
+            task.bitmap = new byte[(task.chunks() + 7) / 8];
+            in.readFully(task.bitmap);
+            task.inflight = new boolean[task.chunks()];
+            long bytes = 0;
+            for (int i = 0; i < task.chunks(); i++) {
+                if (task.isDone(i)) {
+                    task.done++;
+                    bytes += Math.max(task.chunkLength(i), 0);
+                }
+            }
+            task.downloaded.set(bytes);
+            task.lastDownloaded = bytes;
+            task.state = State.PAUSED;
+            return task;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    synchronized boolean prepared() {
+        return bitmap != null;
+    }
+
+    synchronized FileChannel channel() throws IOException {
+        if (removed) throw new IOException("removed");
+        if (dataFile == null) dataFile = new RandomAccessFile(file, "rw");
+        return dataFile.getChannel();
+    }
+
+    long chunkStart(int chunk) {
+        return (long) chunk * chunkSize;
+    }
+
+    // -1 for the single chunk of a file of unknown length
+    long chunkLength(int chunk) {
+        if (length < 0) return -1;
+        return Math.min(chunkSize, length - chunkStart(chunk));
+    }
+
+    // the next chunk nobody works on, -1 when all are done or claimed
+    synchronized int claim() {
+        int chunks = chunks();
+        for (int i = 0; i < chunks; i++) {
+            int chunk = (cursor + i) % chunks;
+            if (isDone(chunk) || inflight[chunk]) continue;
+            inflight[chunk] = true;
+            cursor = chunk + 1;
+            return chunk;
+        }
+        return -1;
+    }
+
+    synchronized void release(int chunk) {
+        inflight[chunk] = false;
+        cursor = Math.min(cursor, chunk);
+    }
+
+    // returns true when this was the last missing chunk
+    synchronized boolean complete(int chunk) throws IOException {
+        if (removed) throw new IOException("removed");
+        inflight[chunk] = false;
+        if (isDone(chunk)) return done == chunks();
+        bitmap[chunk / 8] |= (byte) (1 << (chunk % 8));
+        done++;
+        if (sidecarFile == null) sidecarFile = new RandomAccessFile(sidecar, "rw");
+        sidecarFile.seek(bitmapOffset + chunk / 8);
+        sidecarFile.write(bitmap[chunk / 8]);
+        return done == chunks();
+    }
+
+    // the length of a file that arrived without one, the file is cut to it
+    synchronized void setLength(long length) throws IOException {
+        if (removed) throw new IOException("removed");
+        this.length = length;
+        chunkSize = Math.max(length, 1);
+        channel().truncate(length);
+        if (sidecarFile == null) sidecarFile = new RandomAccessFile(sidecar, "rw");
+        // length and chunk size follow magic and version
+        sidecarFile.seek(8);
+        sidecarFile.writeLong(length);
+        sidecarFile.writeLong(chunkSize);
+    }
+
+    synchronized boolean finished() {
+        return bitmap != null && done == chunks();
+    }
+
+    synchronized void close() {
+        try {
+            if (dataFile != null) dataFile.close();
+            if (sidecarFile != null) sidecarFile.close();
+        } catch (IOException ignored) {
+        }
+        dataFile = null;
+        sidecarFile = null;
+    }
+
+    // closes and deletes both files, workers still fetching fail their next write instead of creating them again
+    synchronized void discard() {
+        removed = true;
+        close();
+        file.delete();
+        sidecar.delete();
+    }
+
+    private boolean isDone(int chunk) {
+        return (bitmap[chunk / 8] & (1 << (chunk % 8))) != 0;
+    }
+}
@@ -0,0 +1,249 @@
+package top.ourfor.app.iPlayClient;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client for Emby API calls made by the JS side, one instance for the whole app.
+ * Connections are kept alive in the platform pool, responses are read to the end and the stream closed
+ * instead of disconnecting so the socket is reused. Identical GETs in flight share one request, every caller
+ * gets the response or cancels only its own interest. Playback calls run on their own lane so they never wait
+ * behind list traffic, the other calls are taken by priority and then in order of arrival.
+ * A call with fields set streams a successful response through a {@link JsonProjection}, so only the
+ * projected rows are kept in memory and sent over the bridge.
+ */
+class EmbyHttp {
+    enum Priority {
+        PLAYBACK,
+        NORMAL,
+        BACKGROUND
+    }
+
+    interface Callback {
+        void onResponse(int status, String body);
+
+        // cancelled requests are not reported
+        void onFailure(IOException e);
+    }
+
+    private static final String TAG = "EmbyHttp";
+    private static final int TIMEOUT = 15_000;
+    private static final int WORKERS = 4;
+    private static final int PLAYBACK_WORKERS = 2;
+    private static EmbyHttp shared;
+
+    private class Call implements Runnable, Comparable<Call> {
+        final String key;
+        final String method;
+        final String url;
+        final Map<String, String> headers;
+        final String body;
+        final JsonProjection projection;
+        final long order = sequence.getAndIncrement();
+        final HashMap<Integer, Callback> callbacks = new HashMap<>();
+        Priority priority;
+        boolean started;
+        boolean cancelled;
+        volatile HttpURLConnection connection;
+
+        Call(String key, String method, String url, Map<String, String> headers, String body,
+             JsonProjection projection, Priority priority) {
+            this.key = key;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+            this.projection = projection;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(Call other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(order, other.order);
+        }
+
+        @Override
+        public void run() {
+            synchronized (EmbyHttp.this) {
+                if (cancelled) return;
+                started = true;
+            }
+            int status = 0;
+            String response = null;
+            IOException error = null;
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                this.connection = connection;
+                connection.setConnectTimeout(TIMEOUT);
+                connection.setReadTimeout(TIMEOUT);
+                connection.setRequestMethod(method);
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+                if (body != null) {
+                    connection.setDoOutput(true);
+                    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                    connection.setFixedLengthStreamingMode(bytes.length);
+                    try (OutputStream out = connection.getOutputStream()) {
+                        out.write(bytes);
+                    }
+                }
+                status = connection.getResponseCode();
+                InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                if (in == null) {
+                    response = "";
+                } else if (projection != null && status >= 200 && status < 300) {
+                    response = projection.project(new InputStreamReader(in, StandardCharsets.UTF_8));
+                } else {
+                    response = read(in);
+                }
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                // a rejected header or a malformed body, the callers still get an answer and the key is freed
+                error = new IOException(e.toString(), e);
+                HttpURLConnection connection = this.connection;
+                if (connection != null) connection.disconnect();
+            }
+            finish(this, status, response, error);
+        }
+    }
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final HashMap<String, Call> inflight = new HashMap<>();
+    // request id to the call it waits for
+    private final HashMap<Integer, Call> requests = new HashMap<>();
+    private final ThreadPoolExecutor workers = executor("emby-http", WORKERS);
+    private final ThreadPoolExecutor playbackWorkers = executor("emby-http-playback", PLAYBACK_WORKERS);
+    private Map<String, String> defaultHeaders = new TreeMap<>();
+    private int headersVersion;
+
+    static synchronized EmbyHttp shared() {
+        if (shared == null) {
+            shared = new EmbyHttp();
+        }
+        return shared;
+    }
+
+    // client and token headers sent with every request, so callers only pass what differs
+    synchronized void setDefaultHeaders(Map<String, String> headers) {
+        defaultHeaders = new TreeMap<>(headers);
+        headersVersion++;
+    }
+
+    // id is chosen by the caller and used to cancel, body is null for requests without one,
+    // fields is the whitelist of a JsonProjection or null for the response as is
+    synchronized void request(int id, String method, String url, Map<String, String> headers, String body,
+                              List<String> fields, Priority priority, Callback callback) {
+        TreeMap<String, String> merged = new TreeMap<>(defaultHeaders);
+        if (headers != null) merged.putAll(headers);
+        if (fields != null && fields.isEmpty()) fields = null;
+        boolean shareable = "GET".equals(method) && body == null;
+        String key = shareable ? headersVersion + " " + url + " " + merged + " " + fields : null;
+        Call call = shareable ? inflight.get(key) : null;
+        if (call != null) {
+            if (priority.compareTo(call.priority) < 0) promote(call, priority);
+        } else {
+            call = new Call(key, method, url, merged, body, fields != null ? new JsonProjection(fields) : null, priority);
+            if (key != null) inflight.put(key, call);
+            lane(priority).execute(call);
+        }
+        call.callbacks.put(id, callback);
+        requests.put(id, call);
+    }
+
+    // drops the caller's interest, the request itself is aborted once nobody waits for it
+    synchronized void cancel(int id) {
+        Call call = requests.remove(id);
+        if (call == null) return;
+        call.callbacks.remove(id);
+        if (!call.callbacks.isEmpty()) return;
+        call.cancelled = true;
+        if (call.key != null) inflight.remove(call.key);
+        if (!call.started) {
+            lane(call.priority).remove(call);
+            return;
+        }
+        HttpURLConnection connection = call.connection;
+        if (connection != null) connection.disconnect();
+    }
+
+    // moves a queued call up, a call already handed to a worker only takes the new priority
+    private void promote(Call call, Priority priority) {
+        boolean queued = !call.started && lane(call.priority).remove(call);
+        call.priority = priority;
+        if (queued) lane(priority).execute(call);
+    }
+
+    private void finish(Call call, int status, String body, IOException error) {
+        ArrayList<Callback> callbacks;
+        synchronized (this) {
+            if (call.key != null && inflight.get(call.key) == call) inflight.remove(call.key);
+            for (Integer id : call.callbacks.keySet()) requests.remove(id);
+            callbacks = new ArrayList<>(call.callbacks.values());
+            call.callbacks.clear();
+            if (call.cancelled) return;
+        }
+        if (error != null) Log.d(TAG, call.method + " " + call.url + ": " + error);
+        for (Callback callback : callbacks) {
+            if (error != null) {
+                callback.onFailure(error);
+            } else {
+                callback.onResponse(status, body);
+            }
+        }
+    }
+
+    private ThreadPoolExecutor lane(Priority priority) {
+        return priority == Priority.PLAYBACK ? playbackWorkers : workers;
+    }
+
+    private static ThreadPoolExecutor executor(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // reads the whole body and closes the stream, which returns the connection to the keep-alive pool
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int count;
+            while ((count = stream.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
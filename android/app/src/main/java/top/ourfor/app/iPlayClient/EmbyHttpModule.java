@@ -0,0 +1,97 @@
+package top.ourfor.app.iPlayClient;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class EmbyHttpModule extends ReactContextBaseJavaModule {
+    static private String moduleName = "EmbyHttpModule";
+
+    EmbyHttpModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @ReactMethod
+    public void setDefaultHeaders(ReadableMap headers) {
+        EmbyHttp.shared().setDefaultHeaders(toHeaders(headers));
+    }
+
+    // options: url, method, headers, body, fields (the whitelist of rows to keep), priority ('playback', 'normal' or 'background');
+    // resolves status and body for every response, rejects on network errors, stays pending once cancelled
+    @ReactMethod
+    public void request(double id, ReadableMap options, Promise promise) {
+        String method = has(options, "method") ? options.getString("method").toUpperCase(Locale.ROOT) : "GET";
+        String body = has(options, "body") ? options.getString("body") : null;
+        Map<String, String> headers = has(options, "headers") ? toHeaders(options.getMap("headers")) : null;
+        ArrayList<String> fields = null;
+        if (has(options, "fields")) {
+            ReadableArray array = options.getArray("fields");
+            fields = new ArrayList<>(array.size());
+            for (int i = 0; i < array.size(); i++) {
+                fields.add(array.getString(i));
+            }
+        }
+        EmbyHttp.Priority priority = EmbyHttp.Priority.NORMAL;
+        if (has(options, "priority")) {
+            try {
+                priority = EmbyHttp.Priority.valueOf(options.getString("priority").toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        EmbyHttp.shared().request((int) id, method, options.getString("url"), headers, body, fields, priority, new EmbyHttp.Callback() {
+            @Override
+            public void onResponse(int status, String body) {
+                WritableMap map = Arguments.createMap();
+                map.putInt("status", status);
+                map.putString("body", body);
+                promise.resolve(map);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                promise.reject("network_error", e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void cancel(double id) {
+        EmbyHttp.shared().cancel((int) id);
+    }
+
+    private static boolean has(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key);
+    }
+
+    private static Map<String, String> toHeaders(ReadableMap map) {
+        HashMap<String, String> headers = new HashMap<>();
+        if (map == null) return headers;
+        ReadableMapKeySetIterator iterator = map.keySetIterator();
+        while (iterator.hasNextKey()) {
+            String key = iterator.nextKey();
+            String value = map.getString(key);
+            if (value != null) headers.put(key, value);
+        }
+        return headers;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return moduleName;
+    }
+}
@@ -0,0 +1,258 @@
+package top.ourfor.app.iPlayClient;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the external font directory persisted as a tsv file keyed by path, size and mtime, one line per face.
+ * A refresh runs on a background thread and only looks at files that are new or changed since the
+ * last scan, lookups are answered from an immutable in-memory snapshot.
+ */
+class FontIndex {
+    static class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final List<FontNameParser.Face> faces;
+
+        Entry(String path, long size, long modified, List<FontNameParser.Face> faces) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.faces = faces;
+        }
+    }
+
+    // the face a family name resolves to
+    static class Location {
+        final File file;
+        final int index;
+
+        Location(File file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+    }
+
+    private static final String TAG = "FontIndex";
+    private static final long READY_TIMEOUT = 2000;
+    private static final int PARSE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static FontIndex shared;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "font-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // path -> entry and family -> face, replaced as a whole after every refresh
+    private volatile Map<String, Entry> byPath = Collections.emptyMap();
+    private volatile Map<String, Location> byFamily = Collections.emptyMap();
+    private boolean loaded = false;
+    // released after the first refresh, a family can be looked up before it finished
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    static synchronized FontIndex shared() {
+        if (shared == null) {
+            shared = new FontIndex();
+        }
+        return shared;
+    }
+
+    Set<String> families() {
+        return byFamily.keySet();
+    }
+
+    Location locate(String family) {
+        try {
+            ready.await(READY_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return byFamily.get(family);
+    }
+
+    // then runs on the index thread once the snapshot reflects the font directory
+    void refreshAsync(Context context, Runnable then) {
+        submit(context, then);
+    }
+
+    // runs the refresh on the index thread and waits for it, for callers already off the main thread like the startup task
+    void refresh(Context context) {
+        try {
+            submit(context, null).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("font index refresh failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Future<?> submit(Context context, Runnable then) {
+        File fontDir = new File(FontModule.getFontPath(context));
+        File indexFile = new File(context.getFilesDir(), "font-index.v2.tsv");
+        return executor.submit(() -> {
+            try {
+                refresh(fontDir, indexFile);
+            } catch (RuntimeException e) {
+                // the future keeps it, nobody looks at the ones of refreshAsync
+                Log.e(TAG, "refresh failed", e);
+                throw e;
+            }
+            if (then != null) then.run();
+        });
+    }
+
+    private void refresh(File fontDir, File indexFile) {
+        long start = System.nanoTime();
+        if (!loaded) {
+            byPath = load(indexFile);
+            loaded = true;
+        }
+        if (!fontDir.exists() && !fontDir.mkdirs()) {
+            Log.d(TAG, "create fontDir failed: " + fontDir.getPath());
+        }
+        File[] files = fontDir.listFiles(f -> f.isFile() && FontModule.isFontFile(f.getName()));
+        if (files == null) files = new File[0];
+
+        Map<String, Entry> previous = byPath;
+        HashMap<String, Entry> paths = new HashMap<>(files.length * 2);
+        ArrayList<File> changed = new ArrayList<>();
+        for (File file : files) {
+            Entry entry = previous.get(file.getPath());
+            if (entry == null || entry.size != file.length() || entry.modified != file.lastModified()) {
+                changed.add(file);
+            } else {
+                paths.put(entry.path, entry);
+            }
+        }
+        for (Entry entry : parse(changed)) {
+            paths.put(entry.path, entry);
+        }
+        int scanned = changed.size();
+
+        // a family with several faces resolves to the one closest to regular
+        HashMap<String, FontNameParser.Face> best = new HashMap<>(paths.size() * 2);
+        HashMap<String, Location> families = new HashMap<>(paths.size() * 2);
+        for (Entry entry : paths.values()) {
+            for (FontNameParser.Face face : entry.faces) {
+                FontNameParser.Face current = best.get(face.family);
+                if (current != null && distance(current) <= distance(face)) continue;
+                best.put(face.family, face);
+                families.put(face.family, new Location(new File(entry.path), face.index));
+            }
+        }
+        byPath = Collections.unmodifiableMap(paths);
+        byFamily = Collections.unmodifiableMap(families);
+        if (scanned > 0 || paths.size() != previous.size()) {
+            save(indexFile, paths);
+        }
+        ready.countDown();
+        Log.d(TAG, "refresh " + paths.size() + " fonts, " + scanned + " scanned in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    // changed files are parsed in parallel, a file that is not a readable font falls back to its file name
+    private static List<Entry> parse(List<File> files) {
+        ArrayList<Entry> entries = new ArrayList<>(files.size());
+        if (files.isEmpty()) return entries;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(PARSE_THREADS, files.size()));
+        ArrayList<Future<Entry>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(pool.submit(() -> {
+                List<FontNameParser.Face> faces;
+                try {
+                    faces = FontNameParser.parse(file);
+                } catch (IOException e) {
+                    Log.d(TAG, file.getPath() + ": " + e);
+                    faces = Collections.emptyList();
+                }
+                if (faces.isEmpty()) {
+                    faces = Collections.singletonList(new FontNameParser.Face(0, FontModule.familyName(file), null, 400, false));
+                }
+                return new Entry(file.getPath(), file.length(), file.lastModified(), faces);
+            }));
+        }
+        for (Future<Entry> future : futures) {
+            try {
+                entries.add(future.get());
+            } catch (ExecutionException e) {
+                Log.d(TAG, e.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        pool.shutdownNow();
+        return entries;
+    }
+
+    private static int distance(FontNameParser.Face face) {
+        return Math.abs(face.weight - 400) + (face.italic ? 1000 : 0);
+    }
+
+    private static Map<String, Entry> load(File indexFile) {
+        HashMap<String, Entry> entries = new HashMap<>();
+        if (!indexFile.exists()) return entries;
+        try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // path, size, mtime, face index, weight, italic, family, style
+                String[] fields = line.split("\t", 8);
+                if (fields.length < 8) continue;
+                Entry entry = entries.get(fields[0]);
+                if (entry == null) {
+                    entry = new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), new ArrayList<>(1));
+                    entries.put(entry.path, entry);
+                }
+                String style = fields[7].isEmpty() ? null : fields[7];
+                entry.faces.add(new FontNameParser.Face(Integer.parseInt(fields[3]), fields[6], style,
+                        Integer.parseInt(fields[4]), fields[5].equals("1")));
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.d(TAG, e.toString());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    private static void save(File indexFile, Map<String, Entry> entries) {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            for (Entry entry : entries.values()) {
+                for (FontNameParser.Face face : entry.faces) {
+                    writer.write(entry.path + "\t" + entry.size + "\t" + entry.modified + "\t" + face.index + "\t" +
+                            face.weight + "\t" + (face.italic ? 1 : 0) + "\t" + clean(face.family) + "\t" +
+                            (face.style != null ? clean(face.style) : "") + "\n");
+                }
+            }
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        }
+        if (!temp.renameTo(indexFile)) {
+            Log.d(TAG, "replace font index failed: " + indexFile.getPath());
+        }
+    }
+}
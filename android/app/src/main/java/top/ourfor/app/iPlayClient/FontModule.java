@@ -6,7 +6,6 @@ import android.os.Build;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.RequiresApi;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
@@ -17,8 +16,9 @@ import com.facebook.react.bridge.WritableArray;
 
 import java.io.File;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 
 public class FontModule extends ReactContextBaseJavaModule {
@@ -54,43 +54,66 @@ public class FontModule extends ReactContextBaseJavaModule {
         return fontDir.getPath();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
-    public static void scanExternalFont(Context context) throws IllegalAccessException, NoSuchMethodException, NoSuchFieldException {
-        File filesDir = context.getExternalFilesDir("");
-        File fontDir = new File(filesDir, "font");
-        if (!fontDir.exists()) {
-            boolean created = fontDir.mkdirs();
-            if (created) {
-                Log.d(moduleName, "create fontDir success: " + fontDir.getPath());
+    static boolean isFontFile(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".ttf") || lower.endsWith(".otf") || lower.endsWith(".ttc");
+    }
+
+    // used when the name table could not be read
+    static String familyName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    // creates the typeface of an indexed family on first use and makes it visible to Typeface.create
+    static boolean loadExternalFont(String familyName) {
+        StartupScheduler.shared().require("system-font");
+        if (systemFontMap == null || familyName == null) return false;
+        synchronized (systemFontMap) {
+            if (systemFontMap.containsKey(familyName)) return true;
+        }
+        FontIndex.Location location = FontIndex.shared().locate(familyName);
+        if (location == null) return false;
+        Typeface font;
+        try {
+            if (location.index > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                font = new Typeface.Builder(location.file).setTtcIndex(location.index).build();
             } else {
-                Log.d(moduleName, "create fontDir failed: " + fontDir.getPath());
+                font = Typeface.createFromFile(location.file);
             }
+        } catch (RuntimeException e) {
+            Log.d(moduleName, e.toString());
+            return false;
         }
-
-        File[] ttfs = fontDir.listFiles(f -> f.isFile() && f.getName().endsWith("ttf"));
-        Map<String, Typeface> fontMap = getSystemFontMap();
-        for (File ttf : ttfs) {
-            Typeface font = Typeface.createFromFile(ttf);
-            String familyName = ttf.getName().replace(".ttf", "");
-            fontMap.put(familyName, font);
+        synchronized (systemFontMap) {
+            systemFontMap.put(familyName, font);
         }
+        return true;
     }
 
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean loadFontFamily(String familyName) {
+        return loadExternalFont(familyName);
+    }
 
-    @RequiresApi(api = Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
     @ReactMethod
-    public void fontFamilyListAsync(Promise promise) throws NoSuchFieldException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        WritableArray array = fontFamilyList();
-        promise.resolve(array);
+    public void fontFamilyListAsync(Promise promise) {
+        // picks up fonts copied into the font dir since the last refresh
+        FontIndex.shared().refreshAsync(getReactApplicationContext(), () -> promise.resolve(fontFamilyList()));
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+    // system families plus the indexed external ones, answered from memory
     @ReactMethod(isBlockingSynchronousMethod = true)
-    public WritableArray fontFamilyList() throws NoSuchFieldException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        scanExternalFont(getReactApplicationContext());
-        ArrayList<String> fontNames = new ArrayList<>();
-        fontNames.addAll(systemFontMap.keySet());
-        return Arguments.fromList(fontNames);
+    public WritableArray fontFamilyList() {
+        StartupScheduler.shared().require("system-font");
+        HashSet<String> fontNames = new HashSet<>(FontIndex.shared().families());
+        if (systemFontMap != null) {
+            synchronized (systemFontMap) {
+                fontNames.addAll(systemFontMap.keySet());
+            }
+        }
+        return Arguments.fromList(new ArrayList<>(fontNames));
     }
 
 
@@ -0,0 +1,154 @@
+package top.ourfor.app.iPlayClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads family, style and weight of every face in a TTF, OTF or TTC file.
+ * The file is memory mapped and only the table directory, the name and the OS/2 tables are touched,
+ * name records are ranked by their offsets and only the winning ones are decoded.
+ */
+class FontNameParser {
+    static class Face {
+        final int index;
+        final String family;
+        final String style;
+        final int weight;
+        final boolean italic;
+
+        Face(int index, String family, String style, int weight, boolean italic) {
+            this.index = index;
+            this.family = family;
+            this.style = style;
+            this.weight = weight;
+            this.italic = italic;
+        }
+    }
+
+    private static final int TAG_TTCF = 0x74746366;
+    private static final int TAG_NAME = 0x6e616d65;
+    private static final int TAG_OS2 = 0x4f532f32;
+
+    private static final int NAME_FAMILY = 1;
+    private static final int NAME_SUBFAMILY = 2;
+    private static final int NAME_TYPOGRAPHIC_FAMILY = 16;
+    private static final int NAME_TYPOGRAPHIC_SUBFAMILY = 17;
+
+    private static final int PLATFORM_MAC = 1;
+    private static final int PLATFORM_WINDOWS = 3;
+    private static final int LANGUAGE_EN_US = 0x409;
+
+    // the faces of the file, empty when it is not a font we understand
+    static List<Face> parse(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return parse(buffer);
+        }
+    }
+
+    static List<Face> parse(ByteBuffer buffer) {
+        ArrayList<Face> faces = new ArrayList<>(1);
+        try {
+            if (buffer.getInt(0) == TAG_TTCF) {
+                int count = buffer.getInt(8);
+                for (int i = 0; i < count; i++) {
+                    Face face = parseFace(buffer, buffer.getInt(12 + i * 4), i);
+                    if (face != null) faces.add(face);
+                }
+            } else {
+                Face face = parseFace(buffer, 0, 0);
+                if (face != null) faces.add(face);
+            }
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            // truncated or not a font, whatever was read so far is kept
+        }
+        return faces;
+    }
+
+    private static Face parseFace(ByteBuffer buffer, int offset, int index) {
+        int numTables = buffer.getShort(offset + 4) & 0xffff;
+        int name = -1;
+        int os2 = -1;
+        for (int i = 0; i < numTables; i++) {
+            int record = offset + 12 + i * 16;
+            int tag = buffer.getInt(record);
+            if (tag == TAG_NAME) name = buffer.getInt(record + 8);
+            else if (tag == TAG_OS2) os2 = buffer.getInt(record + 8);
+        }
+        if (name < 0) return null;
+
+        int count = buffer.getShort(name + 2) & 0xffff;
+        int strings = name + (buffer.getShort(name + 4) & 0xffff);
+        // best record per name id, indexes into the record array
+        int family = -1, familyScore = 0;
+        int style = -1, styleScore = 0;
+        int typoFamily = -1, typoFamilyScore = 0;
+        int typoStyle = -1, typoStyleScore = 0;
+        for (int i = 0; i < count; i++) {
+            int record = name + 6 + i * 12;
+            int score = score(buffer, record);
+            if (score == 0) continue;
+            switch (buffer.getShort(record + 6) & 0xffff) {
+                case NAME_FAMILY: if (score > familyScore) { family = record; familyScore = score; } break;
+                case NAME_SUBFAMILY: if (score > styleScore) { style = record; styleScore = score; } break;
+                case NAME_TYPOGRAPHIC_FAMILY: if (score > typoFamilyScore) { typoFamily = record; typoFamilyScore = score; } break;
+                case NAME_TYPOGRAPHIC_SUBFAMILY: if (score > typoStyleScore) { typoStyle = record; typoStyleScore = score; } break;
+                default: break;
+            }
+        }
+        String familyName = decode(buffer, strings, typoFamily >= 0 ? typoFamily : family);
+        if (familyName == null || familyName.isEmpty()) return null;
+        String styleName = decode(buffer, strings, typoStyle >= 0 ? typoStyle : style);
+
+        int weight = 400;
+        boolean italic = false;
+        if (os2 >= 0) {
+            weight = buffer.getShort(os2 + 4) & 0xffff;
+            italic = (buffer.getShort(os2 + 62) & 0x1) != 0;
+        } else if (styleName != null) {
+            italic = styleName.contains("Italic") || styleName.contains("Oblique");
+            if (styleName.contains("Bold")) weight = 700;
+        }
+        return new Face(index, familyName, styleName, weight, italic);
+    }
+
+    // 0 for records we cannot decode, higher is better: windows english, windows, mac roman
+    private static int score(ByteBuffer buffer, int record) {
+        int platform = buffer.getShort(record) & 0xffff;
+        int encoding = buffer.getShort(record + 2) & 0xffff;
+        int language = buffer.getShort(record + 4) & 0xffff;
+        if (platform == PLATFORM_WINDOWS && (encoding == 1 || encoding == 10)) {
+            return language == LANGUAGE_EN_US ? 3 : 2;
+        }
+        if (platform == PLATFORM_MAC && encoding == 0 && language == 0) return 1;
+        return 0;
+    }
+
+    private static String decode(ByteBuffer buffer, int strings, int record) {
+        if (record < 0) return null;
+        int platform = buffer.getShort(record) & 0xffff;
+        int length = buffer.getShort(record + 8) & 0xffff;
+        int start = strings + (buffer.getShort(record + 10) & 0xffff);
+        if (platform == PLATFORM_WINDOWS) {
+            char[] chars = new char[length / 2];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = buffer.getChar(start + i * 2);
+            }
+            return new String(chars).trim();
+        }
+        // mac roman, close enough to latin-1 for family names
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (buffer.get(start + i) & 0xff);
+        }
+        return new String(chars).trim();
+    }
+}
@@ -0,0 +1,185 @@
+package top.ourfor.app.iPlayClient;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Cuts a JSON response down to whitelisted fields while it is read, without building the document.
+ * The rows are the elements of a top-level array or of the top-level Items array of an Emby query result,
+ * each row keeps only the listed fields. A field is a dotted path like ImageTags.Primary, naming an object or
+ * array keeps it whole, paths through arrays apply to every element. Scalar members of a top-level object
+ * such as TotalRecordCount are kept, everything else is skipped by the reader.
+ * Built on the gson stream classes rather than android.util.JsonReader, the android ones are stubs in JVM tests.
+ */
+class JsonProjection {
+    private static class Node {
+        final HashMap<String, Node> children = new HashMap<>();
+        // the value is copied without looking inside
+        boolean whole;
+    }
+
+    // a number written as it was read
+    private static class Literal extends Number {
+        final String value;
+
+        Literal(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return (long) doubleValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(value);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static final String ROWS = "Items";
+
+    private final Node root = new Node();
+
+    JsonProjection(List<String> fields) {
+        for (String field : fields) {
+            Node node = root;
+            for (String name : field.split("\\.")) {
+                if (node.whole) break;
+                Node child = node.children.get(name);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+            node.whole = true;
+            node.children.clear();
+        }
+    }
+
+    String project(Reader in) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonReader reader = new JsonReader(in)) {
+            JsonWriter writer = new JsonWriter(out);
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                project(reader, writer, root);
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    JsonToken next = reader.peek();
+                    if (ROWS.equals(name) && next == JsonToken.BEGIN_ARRAY) {
+                        writer.name(name);
+                        project(reader, writer, root);
+                    } else if (next == JsonToken.BEGIN_ARRAY || next == JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                    } else {
+                        writer.name(name);
+                        copy(reader, writer);
+                    }
+                }
+                reader.endObject();
+                writer.endObject();
+            } else {
+                copy(reader, writer);
+            }
+            writer.flush();
+        }
+        return out.toString();
+    }
+
+    private static void project(JsonReader reader, JsonWriter writer, Node node) throws IOException {
+        JsonToken token = reader.peek();
+        if (node.whole || (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY)) {
+            copy(reader, writer);
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            writer.beginArray();
+            while (reader.hasNext()) {
+                project(reader, writer, node);
+            }
+            reader.endArray();
+            writer.endArray();
+        } else {
+            reader.beginObject();
+            writer.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                Node child = node.children.get(name);
+                if (child == null) {
+                    reader.skipValue();
+                    continue;
+                }
+                writer.name(name);
+                project(reader, writer, child);
+            }
+            reader.endObject();
+            writer.endObject();
+        }
+    }
+
+    // streams the next value to the writer unchanged
+    private static void copy(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) copy(reader, writer);
+                reader.endArray();
+                writer.endArray();
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copy(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                // keeps the literal, no double rounding of ticks and ids
+                writer.value(new Literal(reader.nextString()));
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                reader.skipValue();
+                break;
+        }
+    }
+}
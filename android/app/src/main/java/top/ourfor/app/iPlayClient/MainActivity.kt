@@ -1,5 +1,7 @@
 package top.ourfor.app.iPlayClient
 
+import android.app.Activity
+import android.os.Bundle
 import com.facebook.react.ReactActivity
 import com.facebook.react.ReactActivityDelegate
 import com.facebook.react.defaults.DefaultNewArchitectureEntryPoint.fabricEnabled
@@ -13,6 +15,22 @@ class MainActivity : ReactActivity() {
    */
   override fun getMainComponentName(): String = "iPlayClient"
 
+  override fun onCreate(savedInstanceState: Bundle?) {
+    super.onCreate(savedInstanceState)
+    BeanManager.set(Activity::class.java, this, BeanManager.Scope.ACTIVITY)
+  }
+
+  override fun onStop() {
+    super.onStop()
+    // the process may be killed in the background, the media cache index is saved now
+    MediaProxy.shared().flush()
+  }
+
+  override fun onDestroy() {
+    BeanManager.remove(Activity::class.java, this)
+    super.onDestroy()
+  }
+
   /**
    * Returns the instance of the [ReactActivityDelegate]. We use [DefaultReactActivityDelegate]
    * which allows you to enable New Architecture with a single boolean flags [fabricEnabled]
@@ -13,6 +13,10 @@ import com.facebook.react.defaults.DefaultReactHost.getDefaultReactHost
 import com.facebook.react.defaults.DefaultReactNativeHost
 import com.facebook.react.flipper.ReactNativeFlipper
 import com.facebook.soloader.SoLoader
+import top.ourfor.lib.mpv.MPV
+import top.ourfor.app.iPlayClient.StartupScheduler.Affinity.BACKGROUND
+import top.ourfor.app.iPlayClient.StartupScheduler.Affinity.MAIN
+import java.io.File
 
 class MainApplication : Application(), ReactApplication {
 
@@ -39,17 +43,35 @@ class MainApplication : Application(), ReactApplication {
 
   override fun onCreate() {
     super.onCreate()
-    BeanManager.set(Application::class.java, this)
-    BeanManager.set(Context::class.java, this.applicationContext)
-    FontModule.obtainSystemFont()
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
-      FontModule.scanExternalFont(this.applicationContext)
-    }
-    SoLoader.init(this, false)
-    if (BuildConfig.IS_NEW_ARCHITECTURE_ENABLED) {
-      // If you opted-in for the New Architecture, we load the native entry point for this app.
-      load()
-    }
-    ReactNativeFlipper.initializeFlipper(this, reactNativeHost.reactInstanceManager)
+    val context = this.applicationContext
+    StartupScheduler.shared()
+      .add("beans", MAIN) {
+        BeanManager.set(Application::class.java, this)
+        BeanManager.set(Context::class.java, context)
+      }
+      .add("system-font", BACKGROUND) { FontModule.obtainSystemFont() }
+      .add("font-index", BACKGROUND) { FontIndex.shared().refresh(context) }
+      .add("assets", BACKGROUND) { AssetExtractor.shared().extract(context, filesDir.path) }
+      .add("media-proxy", BACKGROUND) { MediaProxy.shared().start(File(cacheDir, "media"), 512L * 1024 * 1024) }
+      .add("resume-store", BACKGROUND) { ResumeStore.shared().load(filesDir) }
+      .add("playback-reporter", BACKGROUND) { PlaybackReporter.shared().load(filesDir) }
+      .add("thumbnails", BACKGROUND) { ThumbnailCache.shared().setDirectory(File(cacheDir, "thumbs"), 64L * 1024 * 1024) }
+      .add("mpv-log", BACKGROUND) { MPV.startLogWriter(File(cacheDir, "log").path, 1024 * 1024, 3) }
+      .add("player-pool", BACKGROUND, arrayOf("assets", "mpv-log")) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+          PlayerPool.shared().prewarm(filesDir.path, cacheDir.path, FontModule.getFontPath(context), 1)
+        }
+      }
+      .add("soloader", MAIN) { SoLoader.init(this, false) }
+      .add("new-arch", MAIN, arrayOf("soloader")) {
+        if (BuildConfig.IS_NEW_ARCHITECTURE_ENABLED) {
+          // If you opted-in for the New Architecture, we load the native entry point for this app.
+          load()
+        }
+      }
+      .add("flipper", MAIN, arrayOf("soloader")) {
+        ReactNativeFlipper.initializeFlipper(this, reactNativeHost.reactInstanceManager)
+      }
+      .start()
   }
 }
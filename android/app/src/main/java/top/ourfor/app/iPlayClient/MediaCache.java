@@ -0,0 +1,298 @@
+package top.ourfor.app.iPlayClient;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk cache of byte ranges of remote media, used by {@link MediaProxy}.
+ * A resource is split into fixed-size segment files that are memory mapped while in use. Each segment keeps a
+ * bitmap of the blocks written so far, together they form the sparse index of the cached ranges which is
+ * persisted next to the segments. Segments of all resources share one size cap and are evicted least recently
+ * used first.
+ */
+class MediaCache {
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int BLOCKS_PER_SEGMENT = 64;
+    static final int SEGMENT_SIZE = BLOCK_SIZE * BLOCKS_PER_SEGMENT;
+    private static final String TAG = "MediaCache";
+    private static final int MAX_MAPPED = 16;
+    // a partly written segment has its index saved at least this often, so process death loses little
+    private static final long SAVE_INTERVAL = 2_000;
+
+    static class Resource {
+        final String key;
+        final File dir;
+        long length = -1;
+        String contentType;
+        // segment -> written blocks, bit i is block i of the segment
+        final HashMap<Integer, Long> blocks = new HashMap<>();
+        boolean dirty;
+        long saved;
+
+        Resource(String key, File dir) {
+            this.key = key;
+            this.dir = dir;
+        }
+    }
+
+    private final File root;
+    private long maxBytes;
+    private long size;
+    private final HashMap<String, Resource> resources = new HashMap<>();
+    // "key/segment" -> bytes on disk, in access order
+    private final LinkedHashMap<String, Long> segments = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, MappedByteBuffer> mapped = new LinkedHashMap<>(MAX_MAPPED, 0.75f, true);
+
+    MediaCache(File root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        if (!root.exists() && !root.mkdirs()) {
+            Log.d(TAG, "create cache dir failed: " + root.getPath());
+        }
+        scan();
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict(null);
+    }
+
+    synchronized Resource open(String key) {
+        Resource resource = resources.get(key);
+        if (resource == null) {
+            resource = load(key);
+            resources.put(key, resource);
+        }
+        return resource;
+    }
+
+    synchronized void setInfo(Resource resource, long length, String contentType) {
+        if (resource.length != length) {
+            // the remote file changed, nothing cached for it is valid anymore
+            if (resource.length >= 0) drop(resource);
+            resource.length = length;
+        }
+        resource.contentType = contentType;
+        resource.dirty = true;
+        save(resource);
+    }
+
+    synchronized boolean has(Resource resource, long block) {
+        Long bits = resource.blocks.get((int) (block / BLOCKS_PER_SEGMENT));
+        return bits != null && (bits & (1L << (block % BLOCKS_PER_SEGMENT))) != 0;
+    }
+
+    // index of the first block in [from, to) that is not cached, to when all are
+    synchronized long firstMissing(Resource resource, long from, long to) {
+        for (long block = from; block < to; block++) {
+            if (!has(resource, block)) return block;
+        }
+        return to;
+    }
+
+    // data is one whole block, only the last block of the resource may be shorter
+    void write(Resource resource, long block, byte[] data, int length) throws IOException {
+        int segment = (int) (block / BLOCKS_PER_SEGMENT);
+        ByteBuffer buffer = map(resource, segment).duplicate();
+        buffer.position((int) (block % BLOCKS_PER_SEGMENT) * BLOCK_SIZE);
+        buffer.put(data, 0, length);
+        synchronized (this) {
+            // evicted while the block was copied, the mapping no longer backs a file
+            if (segments.get(segmentId(resource, segment)) == null) return;
+            Long bits = resource.blocks.get(segment);
+            long next = (bits != null ? bits : 0) | (1L << (block % BLOCKS_PER_SEGMENT));
+            resource.blocks.put(segment, next);
+            resource.dirty = true;
+            if (next == fullBits(resource, segment) || System.currentTimeMillis() - resource.saved >= SAVE_INTERVAL) {
+                save(resource);
+            }
+        }
+    }
+
+    // a read-only view of a cached block starting at offset, null when the block is not cached
+    ByteBuffer read(Resource resource, long block, int offset) throws IOException {
+        if (!has(resource, block)) return null;
+        int segment = (int) (block / BLOCKS_PER_SEGMENT);
+        ByteBuffer buffer = map(resource, segment).asReadOnlyBuffer();
+        int start = (int) (block % BLOCKS_PER_SEGMENT) * BLOCK_SIZE;
+        long end = Math.min((long) start + BLOCK_SIZE, resource.length - (long) segment * SEGMENT_SIZE);
+        buffer.limit((int) end);
+        buffer.position(start + offset);
+        // evicted between the check and the mapping
+        return has(resource, block) ? buffer : null;
+    }
+
+    synchronized void flush() {
+        for (Resource resource : resources.values()) {
+            save(resource);
+        }
+    }
+
+    // saves the index of a resource nobody reads anymore and forgets it, open loads it again
+    synchronized void close(Resource resource) {
+        save(resource);
+        if (resources.get(resource.key) == resource) resources.remove(resource.key);
+    }
+
+    private MappedByteBuffer map(Resource resource, int segment) throws IOException {
+        String id = segmentId(resource, segment);
+        synchronized (this) {
+            MappedByteBuffer buffer = mapped.get(id);
+            if (buffer != null) {
+                segments.get(id);
+                return buffer;
+            }
+        }
+        long length = Math.min(SEGMENT_SIZE, resource.length - (long) segment * SEGMENT_SIZE);
+        if (length <= 0) throw new IOException("segment " + segment + " past the end of " + resource.key);
+        if (!resource.dir.exists() && !resource.dir.mkdirs()) {
+            throw new IOException("create dir failed: " + resource.dir.getPath());
+        }
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(new File(resource.dir, segment + ".seg"), "rw");
+             FileChannel channel = file.getChannel()) {
+            if (file.length() != length) file.setLength(length);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        synchronized (this) {
+            MappedByteBuffer existing = mapped.get(id);
+            if (existing != null) return existing;
+            mapped.put(id, buffer);
+            // unmapping is left to the gc, only the most recently used segments stay referenced here
+            Iterator<String> iterator = mapped.keySet().iterator();
+            while (mapped.size() > MAX_MAPPED && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+            if (segments.put(id, length) == null) {
+                size += length;
+                evict(id);
+            }
+        }
+        return buffer;
+    }
+
+    private long fullBits(Resource resource, int segment) {
+        long length = Math.min(SEGMENT_SIZE, resource.length - (long) segment * SEGMENT_SIZE);
+        int count = (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        return count == 64 ? -1L : (1L << count) - 1;
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = segments.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            String id = entry.getKey();
+            if (id.equals(keep)) continue;
+            iterator.remove();
+            size -= entry.getValue();
+            mapped.remove(id);
+            int slash = id.indexOf('/');
+            String key = id.substring(0, slash);
+            int segment = Integer.parseInt(id.substring(slash + 1));
+            Resource resource = resources.get(key);
+            if (resource == null) resource = load(key);
+            resource.blocks.remove(segment);
+            resource.dirty = true;
+            new File(resource.dir, segment + ".seg").delete();
+            save(resource);
+        }
+    }
+
+    private void drop(Resource resource) {
+        for (Integer segment : new ArrayList<>(resource.blocks.keySet())) {
+            String id = segmentId(resource, segment);
+            Long length = segments.remove(id);
+            if (length != null) size -= length;
+            mapped.remove(id);
+            new File(resource.dir, segment + ".seg").delete();
+        }
+        resource.blocks.clear();
+    }
+
+    private static String segmentId(Resource resource, int segment) {
+        return resource.key + "/" + segment;
+    }
+
+    // rebuilds the lru from the segment files on disk, oldest first
+    private void scan() {
+        File[] dirs = root.listFiles(File::isDirectory);
+        if (dirs == null) return;
+        ArrayList<File> files = new ArrayList<>();
+        for (File dir : dirs) {
+            File[] segs = dir.listFiles(f -> f.getName().endsWith(".seg"));
+            if (segs != null) files.addAll(Arrays.asList(segs));
+        }
+        files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            segments.put(file.getParentFile().getName() + "/" + name.substring(0, name.length() - 4), file.length());
+            size += file.length();
+        }
+        evict(null);
+    }
+
+    // index: length, content type, then one "segment bitmap" line per segment
+    private Resource load(String key) {
+        Resource resource = new Resource(key, new File(root, key));
+        File index = new File(resource.dir, "index");
+        if (!index.exists()) return resource;
+        try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+            resource.length = Long.parseLong(reader.readLine());
+            String contentType = reader.readLine();
+            resource.contentType = contentType == null || contentType.isEmpty() ? null : contentType;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space < 0) continue;
+                int segment = Integer.parseInt(line.substring(0, space));
+                // a segment evicted while its index was not yet written has no file anymore
+                if (!new File(resource.dir, segment + ".seg").exists()) continue;
+                resource.blocks.put(segment, Long.parseLong(line.substring(space + 1)));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, key + ": " + e);
+            resource.length = -1;
+            resource.blocks.clear();
+        }
+        return resource;
+    }
+
+    private void save(Resource resource) {
+        if (!resource.dirty) return;
+        resource.dirty = false;
+        resource.saved = System.currentTimeMillis();
+        if (!resource.dir.exists() && !resource.dir.mkdirs()) return;
+        File index = new File(resource.dir, "index");
+        File temp = new File(resource.dir, "index.tmp");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(temp))) {
+            writer.write(resource.length + "\n");
+            writer.write((resource.contentType != null ? resource.contentType : "") + "\n");
+            for (Map.Entry<Integer, Long> entry : resource.blocks.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        }
+        if (!temp.renameTo(index)) {
+            Log.d(TAG, "replace index failed: " + index.getPath());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package top.ourfor.app.iPlayClient;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Stable key of a media url, the same media opened in another session maps to the same key.
+ * Plain string handling, no android.net.Uri, so it runs in JVM tests.
+ */
+class MediaKey {
+    // query parameters that change between sessions of the same media
+    private static final Set<String> VOLATILE_PARAMS = new HashSet<>(Arrays.asList(
+            "api_key", "PlaySessionId", "DeviceId", "X-Emby-Token"));
+
+    // 32 hex chars, usable as a file name
+    static String of(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(stable(url).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format(Locale.ROOT, "%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the url without the volatile query parameters, the others keep their order and encoding
+    static String stable(String url) {
+        int hash = url.indexOf('#');
+        String fragment = hash >= 0 ? url.substring(hash) : "";
+        String rest = hash >= 0 ? url.substring(0, hash) : url;
+        int question = rest.indexOf('?');
+        if (question < 0) return url;
+        StringBuilder stable = new StringBuilder(rest.substring(0, question));
+        char separator = '?';
+        for (String param : rest.substring(question + 1).split("&")) {
+            if (param.isEmpty()) continue;
+            int equals = param.indexOf('=');
+            if (VOLATILE_PARAMS.contains(decode(equals >= 0 ? param.substring(0, equals) : param))) continue;
+            stable.append(separator).append(param);
+            separator = '&';
+        }
+        return stable.append(fragment).toString();
+    }
+
+    private static String decode(String name) {
+        try {
+            return URLDecoder.decode(name, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package top.ourfor.app.iPlayClient;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP server on 127.0.0.1 that mpv streams remote media through.
+ * Every requested byte is served from {@link MediaCache}, missing blocks are fetched by one upstream connection
+ * per source which keeps reading a window ahead of the position the player last asked for. Replays, seeks and
+ * resumes inside cached ranges never reach the remote server. Sources without range support are redirected.
+ * A source nobody has read for a while is dropped, a later request for it starts a new one from its url.
+ */
+public class MediaProxy {
+    private static final String TAG = "MediaProxy";
+    private static final int TIMEOUT = 15_000;
+    private static final long IDLE_TIMEOUT = 30_000;
+    private static final int MAX_FAILURES = 5;
+    // a source without clients for this long is dropped
+    private static final long RELEASE_TIMEOUT = 5 * 60_000;
+    // urls of the latest keys handed out, enough to restart sources the player comes back to
+    private static final int MAX_URLS = 64;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes \\d+-\\d+/(\\d+)");
+    private static MediaProxy shared;
+
+    private class Source {
+        final String key;
+        volatile String url;
+        final MediaCache.Resource resource;
+        final Object lock = new Object();
+        boolean probed;
+        boolean running;
+        boolean failed;
+        long demand = -1;
+        long demandChanged;
+        int clients;
+        long idleSince = System.currentTimeMillis();
+        boolean releasing;
+        boolean closed;
+
+        Source(String key, String url) {
+            this.key = key;
+            this.url = url;
+            this.resource = cache.open(key);
+        }
+
+        // false once the source is dropped, the caller has to get a new one
+        boolean attach() {
+            synchronized (lock) {
+                if (closed) return false;
+                clients++;
+                return true;
+            }
+        }
+
+        void detach() {
+            synchronized (lock) {
+                if (--clients == 0) touch();
+            }
+        }
+
+        // restarts the idle time and makes sure a release is scheduled
+        void touch() {
+            synchronized (lock) {
+                idleSince = System.currentTimeMillis();
+                if (releasing) return;
+                releasing = true;
+                sweeper.schedule(this::release, RELEASE_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void release() {
+            synchronized (lock) {
+                releasing = false;
+                if (closed || clients > 0) return;
+                long remaining = idleSince + RELEASE_TIMEOUT - System.currentTimeMillis();
+                if (running || remaining > 0) {
+                    releasing = true;
+                    sweeper.schedule(this::release, running ? IDLE_TIMEOUT : remaining, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                closed = true;
+            }
+            sources.remove(key, this);
+            cache.close(resource);
+            Log.d(TAG, "released " + key);
+        }
+
+        boolean isClosed() {
+            synchronized (lock) {
+                return closed;
+            }
+        }
+
+        // learns length and type of the remote file once per process, false when it cannot be served by ranges
+        boolean probe() {
+            synchronized (lock) {
+                if (probed) return resource.length >= 0;
+            }
+            long length = -1;
+            String contentType = null;
+            HttpURLConnection connection = null;
+            try {
+                connection = connect(url, "bytes=0-0");
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+                    Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+                    if (matcher.matches()) length = Long.parseLong(matcher.group(1));
+                    contentType = connection.getContentType();
+                }
+            } catch (IOException e) {
+                // offline, whatever is cached can still be played
+                Log.d(TAG, "probe " + key + ": " + e);
+                length = resource.length;
+                contentType = resource.contentType;
+            } finally {
+                if (connection != null) connection.disconnect();
+            }
+            if (length >= 0) cache.setInfo(resource, length, contentType);
+            synchronized (lock) {
+                probed = length >= 0;
+                failed = false;
+            }
+            return length >= 0;
+        }
+
+        // the player needs this block next, the read-ahead window starts here
+        void demand(long block) {
+            synchronized (lock) {
+                if (demand != block) {
+                    demand = block;
+                    demandChanged++;
+                    lock.notifyAll();
+                }
+                if (!running) {
+                    running = true;
+                    failed = false;
+                    executor.execute(this::fetch);
+                }
+            }
+        }
+
+        boolean await(long block) {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            synchronized (lock) {
+                while (!cache.has(resource, block)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (failed || remaining <= 0) return false;
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // first block of the read-ahead window that is not cached, -1 when the window is complete
+        private long nextMissing() {
+            if (demand < 0) return -1;
+            long blocks = (resource.length + MediaCache.BLOCK_SIZE - 1) / MediaCache.BLOCK_SIZE;
+            long to = Math.min(blocks, demand + Math.max(1, readAhead / MediaCache.BLOCK_SIZE));
+            long block = cache.firstMissing(resource, demand, to);
+            return block < to ? block : -1;
+        }
+
+        private void fetch() {
+            int failures = 0;
+            while (true) {
+                long from;
+                synchronized (lock) {
+                    long seen = demandChanged;
+                    while ((from = nextMissing()) < 0) {
+                        try {
+                            lock.wait(IDLE_TIMEOUT);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        if (seen == demandChanged) {
+                            running = false;
+                            return;
+                        }
+                        seen = demandChanged;
+                    }
+                }
+                try {
+                    download(from);
+                    failures = 0;
+                } catch (IOException e) {
+                    Log.d(TAG, "fetch " + key + " at block " + from + ": " + e);
+                    if (++failures >= MAX_FAILURES) {
+                        synchronized (lock) {
+                            failed = true;
+                            running = false;
+                            lock.notifyAll();
+                        }
+                        return;
+                    }
+                    try {
+                        Thread.sleep(500L * failures);
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        // streams blocks from the given one on, as long as they are the next missing ones of the window
+        private void download(long block) throws IOException {
+            long offset = block * MediaCache.BLOCK_SIZE;
+            HttpURLConnection connection = connect(url, "bytes=" + offset + "-");
+            try {
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("unexpected response " + connection.getResponseCode());
+                }
+                InputStream in = connection.getInputStream();
+                byte[] buffer = new byte[MediaCache.BLOCK_SIZE];
+                while (true) {
+                    int expected = (int) Math.min(MediaCache.BLOCK_SIZE, resource.length - block * MediaCache.BLOCK_SIZE);
+                    if (expected <= 0) return;
+                    int read = 0;
+                    while (read < expected) {
+                        int count = in.read(buffer, read, expected - read);
+                        if (count < 0) throw new IOException("short read at block " + block);
+                        read += count;
+                    }
+                    cache.write(resource, block, buffer, read);
+                    block++;
+                    synchronized (lock) {
+                        lock.notifyAll();
+                        long next = nextMissing();
+                        if (next < 0) {
+                            // window complete, keep the connection for a while in case the player moves on
+                            try {
+                                lock.wait(TIMEOUT);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                            next = nextMissing();
+                        }
+                        if (next != block) return;
+                    }
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Source> sources = new ConcurrentHashMap<>();
+    // key -> remote url, in access order
+    private final LinkedHashMap<String, String> urls = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_URLS;
+        }
+    };
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "media-proxy-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "media-proxy-sweep");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private MediaCache cache;
+    private ServerSocket server;
+    private volatile long readAhead = 32 * 1024 * 1024;
+
+    public static synchronized MediaProxy shared() {
+        if (shared == null) {
+            shared = new MediaProxy();
+        }
+        return shared;
+    }
+
+    public synchronized void start(File dir, long maxBytes) {
+        if (server != null) return;
+        try {
+            cache = new MediaCache(dir, maxBytes);
+            server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+        } catch (IOException e) {
+            Log.e(TAG, "start failed", e);
+            server = null;
+            return;
+        }
+        ServerSocket socket = server;
+        executor.execute(() -> accept(socket));
+        Log.d(TAG, "listening on " + socket.getLocalPort());
+    }
+
+    public void setReadAhead(long bytes) {
+        readAhead = bytes;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (cache != null) cache.setMaxBytes(maxBytes);
+    }
+
+    // saves the cache index in the background, for the app leaving the foreground
+    public Future<?> flush() {
+        MediaCache cache;
+        synchronized (this) {
+            cache = this.cache;
+        }
+        return executor.submit(() -> {
+            if (cache != null) cache.flush();
+        });
+    }
+
+    // the url the player should load, the remote url itself when it cannot go through the proxy
+    public String url(String remote) {
+        ServerSocket socket;
+        synchronized (this) {
+            socket = server;
+        }
+        if (socket == null || remote == null) return remote;
+        if (!remote.startsWith("http://") && !remote.startsWith("https://")) return remote;
+        String key = MediaKey.of(remote);
+        synchronized (urls) {
+            urls.put(key, remote);
+        }
+        // keeps the latest credentials for upstream requests
+        source(key, remote).url = remote;
+        return "http://127.0.0.1:" + socket.getLocalPort() + "/" + key;
+    }
+
+    // the live source of the key, a new one when there is none or it was just dropped
+    private Source source(String key, String remote) {
+        Source source = sources.compute(key, (k, current) ->
+                current == null || current.isClosed() ? new Source(k, remote) : current);
+        source.touch();
+        return source;
+    }
+
+    // a source of a key handed out by url with one more client, null for unknown keys
+    private Source attach(String key) {
+        while (true) {
+            Source source = sources.get(key);
+            if (source == null) {
+                String remote;
+                synchronized (urls) {
+                    remote = urls.get(key);
+                }
+                if (remote == null) return null;
+                source = source(key, remote);
+            }
+            if (source.attach()) return source;
+        }
+    }
+
+    private void accept(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                executor.execute(() -> handle(client));
+            } catch (IOException e) {
+                Log.d(TAG, e.toString());
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            socket.setSoTimeout(TIMEOUT);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            String[] request = readLine(in).split(" ");
+            String range = null;
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Range")) {
+                    range = line.substring(colon + 1).trim();
+                }
+            }
+            if (request.length < 2 || !request[1].startsWith("/")) {
+                respond(out, "400 Bad Request", "");
+                return;
+            }
+            Source source = attach(request[1].substring(1));
+            if (source == null) {
+                respond(out, "404 Not Found", "");
+                return;
+            }
+            try {
+                serve(source, request[0], range, out);
+            } finally {
+                source.detach();
+            }
+        } catch (IOException e) {
+            // the player closes connections whenever it seeks
+            Log.d(TAG, e.toString());
+        }
+    }
+
+    private void serve(Source source, String method, String range, OutputStream out) throws IOException {
+        if (!source.probe()) {
+            respond(out, "302 Found", "Location: " + source.url + "\r\n");
+            return;
+        }
+        long length = source.resource.length;
+        long start = 0;
+        long end = length - 1;
+        if (range != null) {
+            Matcher matcher = RANGE.matcher(range);
+            if (matcher.matches()) {
+                if (matcher.group(1).isEmpty()) {
+                    start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+            }
+            if (start >= length || start > end) {
+                respond(out, "416 Range Not Satisfiable", "Content-Range: bytes */" + length + "\r\n");
+                return;
+            }
+        }
+        String headers = "Accept-Ranges: bytes\r\n" +
+                "Content-Length: " + (end - start + 1) + "\r\n" +
+                (source.resource.contentType != null ? "Content-Type: " + source.resource.contentType + "\r\n" : "") +
+                (range != null ? "Content-Range: bytes " + start + "-" + end + "/" + length + "\r\n" : "");
+        respond(out, range != null ? "206 Partial Content" : "200 OK", headers);
+        if (method.equalsIgnoreCase("HEAD")) return;
+        copy(source, start, end, Channels.newChannel(out));
+    }
+
+    private void copy(Source source, long start, long end, WritableByteChannel out) throws IOException {
+        long position = start;
+        while (position <= end) {
+            long block = position / MediaCache.BLOCK_SIZE;
+            source.demand(block);
+            ByteBuffer data = cache.read(source.resource, block, (int) (position % MediaCache.BLOCK_SIZE));
+            if (data == null) {
+                if (!source.await(block)) throw new IOException("block " + block + " of " + source.key + " unavailable");
+                continue;
+            }
+            int count = (int) Math.min(data.remaining(), end - position + 1);
+            data.limit(data.position() + count);
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            position += count;
+        }
+    }
+
+    private static void respond(OutputStream out, String status, String headers) throws IOException {
+        String head = "HTTP/1.1 " + status + "\r\n" + headers + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c != '\r') line.append((char) c);
+        }
+        if (c < 0 && line.length() == 0) throw new IOException("connection closed");
+        return line.toString();
+    }
+
+    private static HttpURLConnection connect(String url, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestProperty("Range", range);
+        // byte offsets must refer to the stored representation
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        return connection;
+    }
+}
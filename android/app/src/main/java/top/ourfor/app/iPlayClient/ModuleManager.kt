@@ -17,6 +17,12 @@ class ModuleManager : ReactPackage {
         reactContext: ReactApplicationContext
     ): MutableList<NativeModule> = listOf(
         IntentModule(reactContext),
-        FontModule(reactContext)
+        FontModule(reactContext),
+        PlaybackTraceModule(reactContext),
+        PlaybackQosModule(reactContext),
+        StartupModule(reactContext),
+        DownloadModule(reactContext),
+        EmbyHttpModule(reactContext),
+        PlaybackReportModule(reactContext)
     ).toMutableList()
 }
\ No newline at end of file
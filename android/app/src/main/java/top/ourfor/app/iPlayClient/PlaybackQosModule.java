@@ -0,0 +1,40 @@
+package top.ourfor.app.iPlayClient;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+
+public class PlaybackQosModule extends ReactContextBaseJavaModule {
+    static private String moduleName = "PlaybackQosModule";
+
+    PlaybackQosModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    // the last limit samples of every live player
+    @ReactMethod
+    public void snapshot(int limit, Promise promise) {
+        WritableArray array = Arguments.createArray();
+        for (QosCollector collector : QosCollector.collectors) {
+            array.pushMap(collector.snapshot(limit));
+        }
+        promise.resolve(array);
+    }
+
+    // appends every sample to qos.csv in the cache dir, rotated at 1 MiB
+    @ReactMethod
+    public void setLogEnabled(boolean enabled) {
+        QosCollector.logEnabled = enabled;
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return moduleName;
+    }
+}
@@ -0,0 +1,49 @@
+package top.ourfor.app.iPlayClient;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+
+import java.util.TreeMap;
+
+public class PlaybackReportModule extends ReactContextBaseJavaModule {
+    static private String moduleName = "PlaybackReportModule";
+
+    PlaybackReportModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    // options: url of Sessions/Playing, headers with the client and token, itemId, mediaSourceId, playSessionId;
+    // progress of the next file played is reported until end is called or the player stops
+    @ReactMethod
+    public void begin(ReadableMap options) {
+        TreeMap<String, String> headers = new TreeMap<>();
+        if (options.hasKey("headers") && !options.isNull("headers")) {
+            ReadableMap map = options.getMap("headers");
+            ReadableMapKeySetIterator iterator = map.keySetIterator();
+            while (iterator.hasNextKey()) {
+                String key = iterator.nextKey();
+                String value = map.getString(key);
+                if (value != null) headers.put(key, value);
+            }
+        }
+        String mediaSourceId = options.hasKey("mediaSourceId") ? options.getString("mediaSourceId") : null;
+        PlaybackReporter.shared().begin(new PlaybackReporter.Session(options.getString("url"), headers,
+                options.getString("itemId"), mediaSourceId != null ? mediaSourceId : "", options.getString("playSessionId")));
+    }
+
+    @ReactMethod
+    public void end() {
+        PlaybackReporter.shared().end();
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return moduleName;
+    }
+}
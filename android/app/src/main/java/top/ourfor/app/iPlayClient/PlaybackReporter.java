@@ -0,0 +1,448 @@
+package top.ourfor.app.iPlayClient;
+
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports playback progress of Emby media to the server, one instance for the whole app.
+ * The JS side only begins a session with the item and play session ids, the player feeds position and pause
+ * changes from its event thread and the reporter turns them into Start, TimeUpdate, Pause, Unpause and Stop reports.
+ * Reports are sent one at a time on a background thread, a failed one is retried with backoff and the queue is
+ * kept in a file so reports of a session cut off by the network or the process reach the server later.
+ * A newer progress report replaces the queued ones of its session, so a long outage leaves a few reports, not one per interval.
+ */
+class PlaybackReporter {
+    static class Session {
+        // the Sessions/Playing endpoint of the server
+        final String url;
+        final Map<String, String> headers;
+        final String itemId;
+        final String mediaSourceId;
+        final String playSessionId;
+        Object owner;
+        // MediaKey of the file the owner plays
+        String media;
+        double position = -1;
+        double duration;
+        boolean paused;
+        boolean started;
+        long reported;
+
+        Session(String url, Map<String, String> headers, String itemId, String mediaSourceId, String playSessionId) {
+            this.url = url;
+            this.headers = headers;
+            this.itemId = itemId;
+            this.mediaSourceId = mediaSourceId;
+            this.playSessionId = playSessionId;
+        }
+
+        boolean same(Session other) {
+            return itemId.equals(other.itemId) && playSessionId.equals(other.playSessionId);
+        }
+    }
+
+    private static class Report {
+        final String url;
+        final Map<String, String> headers;
+        final String session;
+        final boolean progress;
+        final String body;
+        final long created;
+
+        Report(String url, Map<String, String> headers, String session, boolean progress, String body, long created) {
+            this.url = url;
+            this.headers = headers;
+            this.session = session;
+            this.progress = progress;
+            this.body = body;
+            this.created = created;
+        }
+    }
+
+    private static final String TAG = "PlaybackReporter";
+    private static final long PROGRESS_INTERVAL = 10_000;
+    private static final long MIN_RETRY = 5_000;
+    private static final long MAX_RETRY = 5 * 60_000;
+    private static final long MAX_AGE = 24 * 60 * 60_000;
+    private static final int MAX_REPORTS = 200;
+    private static final int TIMEOUT = 15_000;
+    private static final double TICKS_PER_SECOND = 10_000_000;
+    private static PlaybackReporter shared;
+
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "playback-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ArrayDeque<Report> queue = new ArrayDeque<>();
+    // the head of the queue while it is being sent, never replaced or dropped
+    private Report sending;
+    private Session session;
+    // begun before its player loaded the file
+    private Session pending;
+    // a player that loaded a file no session is attached to yet, and the MediaKey of that file
+    private Object idle;
+    private String idleMedia;
+    private File file;
+    private boolean dirty;
+    private long retryDelay = MIN_RETRY;
+    // a retry is scheduled, new reports wait for it instead of hitting a server that just failed
+    private boolean waiting;
+
+    static synchronized PlaybackReporter shared() {
+        if (shared == null) {
+            shared = new PlaybackReporter();
+        }
+        return shared;
+    }
+
+    // reads the reports left from the last run on the calling thread and sends them
+    void load(File dir) {
+        File file = new File(dir, "playback-reports.json");
+        ArrayDeque<Report> restored = new ArrayDeque<>();
+        if (file.exists()) {
+            try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Report report = readReport(reader);
+                    if (report != null) restored.add(report);
+                }
+                reader.endArray();
+            } catch (IOException | RuntimeException e) {
+                Log.d(TAG, "read reports: " + e);
+            }
+        }
+        synchronized (this) {
+            this.file = file;
+            // reports queued before loading are newer
+            Iterator<Report> iterator = restored.descendingIterator();
+            while (iterator.hasNext()) queue.addFirst(iterator.next());
+            dirty = true;
+        }
+        Log.d(TAG, "loaded " + restored.size() + " reports");
+        sender.execute(this::drain);
+    }
+
+    // attaches the session to the player that loads its file, a different session still running is stopped first
+    synchronized void begin(Session session) {
+        if (this.session != null && this.session.same(session)) return;
+        if (pending != null && pending.same(session)) return;
+        pending = null;
+        stop();
+        if (idle != null) {
+            session.owner = idle;
+            session.media = idleMedia;
+            idle = null;
+            idleMedia = null;
+            this.session = session;
+        } else {
+            pending = session;
+        }
+        Log.d(TAG, "begin " + session.itemId + " " + session.playSessionId);
+    }
+
+    // stops the running session, for the JS side leaving the player
+    synchronized void end() {
+        pending = null;
+        stop();
+    }
+
+    private void stop() {
+        if (session == null) return;
+        if (session.started) enqueue(session, "/Stopped", null, false);
+        session = null;
+    }
+
+    // the calls below come from the player, position and pause changes from its event thread
+
+    // the view loads the same url again once its surface exists, that keeps the session
+    synchronized void onLoad(Object player, String media) {
+        if (session != null && session.owner == player) {
+            // nothing was reported yet, the session belongs to the file loaded now
+            if (!session.started || media.equals(session.media)) {
+                session.media = media;
+                return;
+            }
+            // a different file in the same player ends the session of the previous one
+            stop();
+        }
+        if (pending != null) {
+            pending.owner = player;
+            pending.media = media;
+            session = pending;
+            pending = null;
+        } else {
+            idle = player;
+            idleMedia = media;
+        }
+    }
+
+    // position of the file with the given MediaKey, ignored when the session belongs to another one
+    synchronized void onPosition(Object player, String media, double position, double duration) {
+        Session session = this.session;
+        if (session == null || session.owner != player || !media.equals(session.media)) return;
+        session.position = position;
+        session.duration = duration;
+        long now = System.currentTimeMillis();
+        if (!session.started) {
+            session.started = true;
+            session.reported = now;
+            enqueue(session, "", null, false);
+        } else if (!session.paused && now - session.reported >= PROGRESS_INTERVAL) {
+            session.reported = now;
+            enqueue(session, "/Progress", "TimeUpdate", true);
+        }
+    }
+
+    synchronized void onPause(Object player, boolean paused) {
+        Session session = this.session;
+        if (session == null || session.owner != player || session.paused == paused) return;
+        session.paused = paused;
+        if (!session.started) return;
+        session.reported = System.currentTimeMillis();
+        enqueue(session, "/Progress", paused ? "Pause" : "Unpause", true);
+    }
+
+    synchronized void onStop(Object player) {
+        if (idle == player) {
+            idle = null;
+            idleMedia = null;
+        }
+        if (session != null && session.owner == player) stop();
+    }
+
+    private void enqueue(Session session, String path, String event, boolean progress) {
+        String key = session.itemId + " " + session.playSessionId;
+        String body = body(session, event, !progress);
+        // the latest report tells the server all it needs, older progress of the session is dropped
+        Iterator<Report> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Report report = iterator.next();
+            if (report != sending && report.progress && report.session.equals(key)) iterator.remove();
+        }
+        queue.add(new Report(session.url + path, session.headers, key, progress, body, System.currentTimeMillis()));
+        while (queue.size() > MAX_REPORTS) {
+            Report report = queue.peekFirst();
+            if (report == sending) break;
+            queue.removeFirst();
+        }
+        dirty = true;
+        sender.execute(this::drain);
+    }
+
+    private static String body(Session session, String event, boolean ranges) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("ItemId").value(session.itemId);
+            writer.name("MediaSourceId").value(session.mediaSourceId);
+            writer.name("PlaySessionId").value(session.playSessionId);
+            writer.name("PositionTicks").value(Math.round(Math.max(session.position, 0) * TICKS_PER_SECOND));
+            writer.name("IsPaused").value(session.paused);
+            writer.name("IsMuted").value(false);
+            writer.name("CanSeek").value(true);
+            writer.name("PlayMethod").value("DirectStream");
+            writer.name("RepeatMode").value("RepeatNone");
+            writer.name("PlaylistIndex").value(0);
+            writer.name("PlaylistLength").value(1);
+            if (event != null) writer.name("EventName").value(event);
+            if (ranges && session.duration > 0) {
+                writer.name("SeekableRanges").beginArray().beginObject()
+                        .name("start").value(0)
+                        .name("end").value(Math.round(session.duration * TICKS_PER_SECOND))
+                        .endObject().endArray();
+            }
+            writer.name("NowPlayingQueue").beginArray().beginObject()
+                    .name("Id").value(session.itemId)
+                    .name("PlaylistItemId").value("playlistItem0")
+                    .endObject().endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            // a StringWriter does not throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    // sends the queued reports in order until it is empty or one fails, runs on the sender thread only
+    private void drain() {
+        while (true) {
+            Report report;
+            persist();
+            synchronized (this) {
+                if (sending != null || waiting) return;
+                long now = System.currentTimeMillis();
+                while (!queue.isEmpty() && now - queue.peekFirst().created > MAX_AGE) {
+                    queue.removeFirst();
+                    dirty = true;
+                }
+                report = queue.peekFirst();
+                if (report == null) return;
+                sending = report;
+            }
+            int status = send(report);
+            // 408 and 429 are worth another try, other client errors will not get better
+            boolean retry = status == 0 || status >= 500 || status == 408 || status == 429;
+            synchronized (this) {
+                sending = null;
+                if (retry) {
+                    long delay = retryDelay;
+                    retryDelay = Math.min(retryDelay * 2, MAX_RETRY);
+                    Log.d(TAG, "report failed with " + status + ", retry in " + delay + "ms");
+                    waiting = true;
+                    sender.schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                if (status >= 300) Log.d(TAG, "report dropped with " + status + ": " + report.url);
+                queue.remove(report);
+                dirty = true;
+                retryDelay = MIN_RETRY;
+            }
+        }
+    }
+
+    private void retry() {
+        synchronized (this) {
+            waiting = false;
+        }
+        drain();
+    }
+
+    // the response status, 0 when the server could not be reached
+    private static int send(Report report) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(report.url).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestMethod("POST");
+            for (Map.Entry<String, String> header : report.headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            byte[] bytes = report.body.getBytes(StandardCharsets.UTF_8);
+            connection.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(bytes);
+            }
+            int status = connection.getResponseCode();
+            // read to the end so the connection goes back to the keep-alive pool
+            try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[4096];
+                    int count;
+                    do {
+                        count = in.read(buffer);
+                    } while (count != -1);
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            Log.d(TAG, "send " + report.url + ": " + e);
+            return 0;
+        }
+    }
+
+    // rewrites the queue file when the queue changed since the last write, runs on the sender thread only
+    private void persist() {
+        File file;
+        ArrayList<Report> reports;
+        synchronized (this) {
+            if (!dirty || this.file == null) return;
+            dirty = false;
+            file = this.file;
+            reports = new ArrayList<>(queue);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.beginArray();
+            for (Report report : reports) writeReport(writer, report);
+            writer.endArray();
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.d(TAG, "replace reports failed: " + file.getPath());
+        }
+    }
+
+    private static void writeReport(JsonWriter writer, Report report) throws IOException {
+        writer.beginObject();
+        writer.name("url").value(report.url);
+        writer.name("session").value(report.session);
+        writer.name("progress").value(report.progress);
+        writer.name("created").value(report.created);
+        writer.name("body").value(report.body);
+        writer.name("headers").beginObject();
+        for (Map.Entry<String, String> header : report.headers.entrySet()) {
+            writer.name(header.getKey()).value(header.getValue());
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    // null for an entry missing a field
+    private static Report readReport(JsonReader reader) throws IOException {
+        String url = null, session = null, body = null;
+        boolean progress = false;
+        long created = 0;
+        TreeMap<String, String> headers = new TreeMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "url":
+                    url = reader.nextString();
+                    break;
+                case "session":
+                    session = reader.nextString();
+                    break;
+                case "progress":
+                    progress = reader.nextBoolean();
+                    break;
+                case "created":
+                    created = reader.nextLong();
+                    break;
+                case "body":
+                    body = reader.nextString();
+                    break;
+                case "headers":
+                    reader.beginObject();
+                    while (reader.hasNext()) headers.put(reader.nextName(), reader.nextString());
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (url == null || session == null || body == null) return null;
+        return new Report(url, headers, session, progress, body, created);
+    }
+}
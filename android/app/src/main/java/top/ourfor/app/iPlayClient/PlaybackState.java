@@ -0,0 +1,29 @@
+package top.ourfor.app.iPlayClient;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+// reused for every playback state event of one player, only valid during the onPlayStateChange call
+public class PlaybackState {
+    public int type;
+    public double position;
+    public double duration;
+
+    void set(int type, double position, double duration) {
+        this.type = type;
+        this.position = position;
+        this.duration = duration;
+    }
+
+    // the one allocation of an event: RCTEventEmitter takes ownership of the map and a native map
+    // cannot be sent twice, so the payload is created here from the reused record
+    public WritableMap toWritableMap() {
+        WritableMap map = Arguments.createMap();
+        map.putInt("type", type);
+        if (type != Player.PlayEventType.PlayEventTypeOnPauseForCache.value) {
+            map.putDouble("duration", duration);
+            map.putDouble("position", position);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,133 @@
+package top.ourfor.app.iPlayClient;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Keeps the summaries of the last sessions and a rolling histogram per startup phase,
+ * the histograms only look at the last {@link #WINDOW} samples so they follow the current network and device.
+ */
+class PlaybackStats {
+    static final int WINDOW = 200;
+    static final int MAX_SESSIONS = 50;
+    // upper bounds of the histogram buckets in ms, the last bucket is open ended
+    static final long[] BUCKETS = {100, 250, 500, 1000, 2000, 3000, 5000, 10000, 20000};
+
+    static class Histogram {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+
+        void add(long value) {
+            if (value < 0) return;
+            samples[next] = value;
+            next = (next + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+
+        void clear() {
+            count = 0;
+            next = 0;
+        }
+
+        WritableMap toWritableMap() {
+            WritableMap map = Arguments.createMap();
+            int[] counts = new int[BUCKETS.length + 1];
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            for (long value : sorted) {
+                int bucket = 0;
+                while (bucket < BUCKETS.length && value > BUCKETS[bucket]) bucket++;
+                counts[bucket]++;
+            }
+            WritableArray bounds = Arguments.createArray();
+            for (long bound : BUCKETS) bounds.pushDouble(bound);
+            WritableArray buckets = Arguments.createArray();
+            for (int value : counts) buckets.pushInt(value);
+            map.putArray("bounds", bounds);
+            map.putArray("counts", buckets);
+            map.putInt("count", count);
+            map.putDouble("p50", percentile(sorted, 0.5));
+            map.putDouble("p90", percentile(sorted, 0.9));
+            map.putDouble("max", count > 0 ? sorted[count - 1] : 0);
+            return map;
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+        }
+    }
+
+    private static PlaybackStats shared;
+
+    private final ArrayDeque<PlaybackTracer.Session> sessions = new ArrayDeque<>();
+    private final Histogram startFile = new Histogram();
+    private final Histogram fileLoaded = new Histogram();
+    private final Histogram videoReconfig = new Histogram();
+    private final Histogram playbackRestart = new Histogram();
+    private final Histogram firstFrame = new Histogram();
+    private final Histogram stallTime = new Histogram();
+
+    static synchronized PlaybackStats shared() {
+        if (shared == null) {
+            shared = new PlaybackStats();
+        }
+        return shared;
+    }
+
+    synchronized void add(PlaybackTracer.Session session) {
+        if (sessions.size() >= MAX_SESSIONS) sessions.pollFirst();
+        sessions.addLast(session);
+        startFile.add(session.startFile);
+        fileLoaded.add(session.fileLoaded);
+        videoReconfig.add(session.videoReconfig);
+        playbackRestart.add(session.playbackRestart);
+        firstFrame.add(session.firstFrame);
+        if (session.firstFrame >= 0) stallTime.add(session.stallTime);
+    }
+
+    synchronized void clear() {
+        sessions.clear();
+        startFile.clear();
+        fileLoaded.clear();
+        videoReconfig.clear();
+        playbackRestart.clear();
+        firstFrame.clear();
+        stallTime.clear();
+    }
+
+    synchronized WritableArray sessions() {
+        WritableArray array = Arguments.createArray();
+        for (PlaybackTracer.Session session : sessions) {
+            WritableMap map = Arguments.createMap();
+            map.putString("host", session.host);
+            map.putString("container", session.container);
+            map.putDouble("startFile", session.startFile);
+            map.putDouble("fileLoaded", session.fileLoaded);
+            map.putDouble("videoReconfig", session.videoReconfig);
+            map.putDouble("playbackRestart", session.playbackRestart);
+            map.putDouble("firstFrame", session.firstFrame);
+            map.putInt("stallCount", session.stallCount);
+            map.putDouble("stallTime", session.stallTime);
+            map.putDouble("duration", session.duration);
+            array.pushMap(map);
+        }
+        return array;
+    }
+
+    synchronized WritableMap histograms() {
+        WritableMap map = Arguments.createMap();
+        map.putMap("startFile", startFile.toWritableMap());
+        map.putMap("fileLoaded", fileLoaded.toWritableMap());
+        map.putMap("videoReconfig", videoReconfig.toWritableMap());
+        map.putMap("playbackRestart", playbackRestart.toWritableMap());
+        map.putMap("firstFrame", firstFrame.toWritableMap());
+        map.putMap("stallTime", stallTime.toWritableMap());
+        return map;
+    }
+}
@@ -0,0 +1,37 @@
+package top.ourfor.app.iPlayClient;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+
+public class PlaybackTraceModule extends ReactContextBaseJavaModule {
+    static private String moduleName = "PlaybackTraceModule";
+
+    PlaybackTraceModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @ReactMethod
+    public void sessions(Promise promise) {
+        promise.resolve(PlaybackStats.shared().sessions());
+    }
+
+    @ReactMethod
+    public void histograms(Promise promise) {
+        promise.resolve(PlaybackStats.shared().histograms());
+    }
+
+    @ReactMethod
+    public void clear() {
+        PlaybackStats.shared().clear();
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return moduleName;
+    }
+}
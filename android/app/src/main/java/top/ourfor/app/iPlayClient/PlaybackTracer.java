@@ -0,0 +1,109 @@
+package top.ourfor.app.iPlayClient;
+
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_END_FILE;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_FILE_LOADED;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_PLAYBACK_RESTART;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_START_FILE;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_VIDEO_RECONFIG;
+
+import android.net.Uri;
+
+/**
+ * Timestamps the startup phases of one playback session with the monotonic clock,
+ * every phase is stored as milliseconds since loadVideo, -1 when it did not happen.
+ * A finished session is handed to {@link PlaybackStats}.
+ */
+class PlaybackTracer {
+    static class Session {
+        String url;
+        String host;
+        String container;
+        long startedAt;
+        long startFile = -1;
+        long fileLoaded = -1;
+        long videoReconfig = -1;
+        long playbackRestart = -1;
+        long firstFrame = -1;
+        int stallCount;
+        long stallTime;
+        long duration;
+        // loads of the same url replaced by a later one, each still ends with an END_FILE
+        int reloads;
+    }
+
+    private Session session;
+    private long stallStart = -1;
+
+    synchronized void begin(String url, long now) {
+        // the view loads the url again once its surface exists, the session goes on with the new load
+        if (session != null && url.equals(session.url)) {
+            session.reloads++;
+            return;
+        }
+        finish(now);
+        session = new Session();
+        session.url = url;
+        session.startedAt = now;
+        Uri uri = Uri.parse(url);
+        session.host = uri.getHost();
+        String path = uri.getLastPathSegment();
+        int dot = path != null ? path.lastIndexOf('.') : -1;
+        session.container = dot >= 0 ? path.substring(dot + 1).toLowerCase() : null;
+    }
+
+    synchronized void onEvent(int type, long now) {
+        if (session == null) return;
+        long elapsed = millis(now);
+        if (type == MPV_EVENT_START_FILE && session.startFile < 0) {
+            session.startFile = elapsed;
+        } else if (type == MPV_EVENT_FILE_LOADED && session.fileLoaded < 0) {
+            session.fileLoaded = elapsed;
+        } else if (type == MPV_EVENT_VIDEO_RECONFIG && session.videoReconfig < 0) {
+            session.videoReconfig = elapsed;
+        } else if (type == MPV_EVENT_PLAYBACK_RESTART && session.playbackRestart < 0) {
+            session.playbackRestart = elapsed;
+        } else if (type == MPV_EVENT_END_FILE && session.startFile >= 0) {
+            // END_FILE of a previous file arrives before START_FILE of this one
+            if (session.reloads == 0) {
+                finish(now);
+                return;
+            }
+            // the replaced load ended, the phases are timed again for the load that plays
+            session.reloads--;
+            session.startFile = -1;
+            session.fileLoaded = -1;
+            session.videoReconfig = -1;
+            session.playbackRestart = -1;
+            session.firstFrame = -1;
+        }
+    }
+
+    synchronized void onTimePos(double position, long now) {
+        if (session == null || session.firstFrame >= 0 || position <= 0) return;
+        session.firstFrame = millis(now);
+    }
+
+    synchronized void onPausedForCache(boolean paused, long now) {
+        if (session == null) return;
+        if (paused && stallStart < 0) {
+            stallStart = now;
+            session.stallCount++;
+        } else if (!paused && stallStart >= 0) {
+            session.stallTime += (now - stallStart) / 1_000_000;
+            stallStart = -1;
+        }
+    }
+
+    synchronized void finish(long now) {
+        if (session == null) return;
+        onPausedForCache(false, now);
+        session.duration = millis(now);
+        // mpv never started the file, a load replaced right away or rejected
+        if (session.startFile >= 0) PlaybackStats.shared().add(session);
+        session = null;
+    }
+
+    private long millis(long now) {
+        return (now - session.startedAt) / 1_000_000;
+    }
+}
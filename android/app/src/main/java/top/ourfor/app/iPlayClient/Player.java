@@ -1,8 +1,13 @@
 package top.ourfor.app.iPlayClient;
 
+import android.graphics.Bitmap;
+import android.os.Build;
 import android.view.SurfaceHolder;
 
+import androidx.annotation.RequiresApi;
+
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Player {
     default void setDelegate(PlayerEventListener delegate) {}
@@ -18,13 +23,32 @@ public interface Player {
     default void resume() {}
     default void pause() {}
     default void seek(long timeInSeconds) {}
+    // seeks while the progress bar is dragged, only the newest target is sought
+    default void scrub(double timeInSeconds) {}
+    // the drag ended, a keyframe seek refined by an exact one
+    default void scrubEnd(double timeInSeconds) { seek((long) timeInSeconds); }
+    // preview frame for the seek bar from memory, reused by the next call; null while none is ready for that time,
+    // onReady runs on a background thread once one was loaded
+    default Bitmap thumbnail(double timeInSeconds, Runnable onReady) { return null; }
     default void stop() {}
     default void resize(String newSize) {}
+    // video, audio and sub tracks of the current file
+    default List tracks() { return null; }
     default List subtitles() { return null; }
     default void setSubtitleFontName(String subtitleFontName) {}
     default void setSubtitleFontDirectory(String directory) {}
     default void destroy() {}
 
+    // non-blocking variants, the future completes once mpv replied on the event loop
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    default CompletableFuture<Object> loadVideoAsync(String url) { loadVideo(url); return CompletableFuture.completedFuture(null); }
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    default CompletableFuture<Object> resumeAsync() { resume(); return CompletableFuture.completedFuture(null); }
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    default CompletableFuture<Object> pauseAsync() { pause(); return CompletableFuture.completedFuture(null); }
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    default CompletableFuture<Object> seekAsync(long timeInSeconds) { seek(timeInSeconds); return CompletableFuture.completedFuture(null); }
+
     void useSubtitle(int id);
 
 
@@ -1,15 +1,18 @@
 package top.ourfor.app.iPlayClient
 
 import android.content.Context
+import android.os.Build
 import android.util.Log
 import android.view.SurfaceHolder
 import android.view.SurfaceView
+import androidx.annotation.RequiresApi
 
+@RequiresApi(Build.VERSION_CODES.N)
 class PlayerContentView(context: Context) : SurfaceView(context), SurfaceHolder.Callback {
     public lateinit var viewModel: Player
     fun initialize(configDir: String, cacheDir: String, fontDir: String?) {
-        viewModel = PlayerViewModel(configDir, cacheDir, fontDir)
-        // we need to call write-watch-later manually
+        viewModel = PlayerPool.shared().acquire(configDir, cacheDir, fontDir)
+        // playback positions are kept by ResumeStore, loadVideo resumes from there
         holder.addCallback(this)
     }
 
@@ -18,13 +21,13 @@ class PlayerContentView(context: Context) : SurfaceView(context), SurfaceHolder.
     fun playFile(filePath: String) {
         this.filePath = filePath
         if (filePath != null) {
-            this.viewModel.loadVideo(filePath)
+            this.viewModel.loadVideoAsync(filePath)
         }
     }
 
     // Called when back button is pressed, or app is shutting down
     fun destroy() {
-        viewModel.destroy()
+        PlayerPool.shared().release(viewModel as PlayerViewModel)
         // Disable surface callbacks to avoid using unintialized mpv state
         holder.removeCallback(this)
     }
@@ -38,11 +41,11 @@ class PlayerContentView(context: Context) : SurfaceView(context), SurfaceHolder.
     override fun surfaceCreated(holder: SurfaceHolder) {
         Log.w(TAG, "attaching surface")
         viewModel.attach(holder)
+        // a pooled player was released with vo=null
+        viewModel.setVideoOutput("gpu")
         if (filePath != null) {
-            viewModel.loadVideo(filePath)
+            viewModel.loadVideoAsync(filePath)
             filePath = null
-        } else {
-            viewModel.setVideoOutput("gpu")
         }
     }
 
@@ -139,6 +139,22 @@ class PlayerControlView(context: Context) : ConstraintLayout(context), PlayerEve
         params
     }
 
+    private var previewImage = run {
+        val image = ImageView(context)
+        image.adjustViewBounds = true
+        image.visibility = View.GONE
+        image.id = resId.getAndIncrement()
+        image
+    }
+
+    private var previewLayout = run {
+        val params = LayoutParams(PREVIEW_WIDTH, LayoutParams.WRAP_CONTENT)
+        params.leftToLeft = progressBar.id
+        params.bottomToTop = progressBar.id
+        params.bottomMargin = 60
+        params
+    }
+
     var titleLabel = run {
         val label = TextView(context)
         label.textSize = 14.0F
@@ -167,6 +183,7 @@ class PlayerControlView(context: Context) : ConstraintLayout(context), PlayerEve
         addView(progressBar, progressBarLayout)
         addView(durationLabel, durationLayout)
         addView(titleLabel, titleLayout)
+        addView(previewImage, previewLayout)
     }
 
     private fun bind() {
@@ -178,13 +195,17 @@ class PlayerControlView(context: Context) : ConstraintLayout(context), PlayerEve
                 updateIcon(playButton, resId)
             }
             if (isPlaying) {
-                player?.pause()
+                player?.pauseAsync()
             } else {
-                player?.resume()
+                player?.resumeAsync()
             }
         }
         progressBar.setOnSeekBarChangeListener(object : SeekBar.OnSeekBarChangeListener {
             override fun onProgressChanged(seekBar: SeekBar, progress: Int, fromUser: Boolean) {
+                if (!fromUser) return
+                durationLabel.text = formatTime(progress, seekBar.max)
+                player?.scrub(progress.toDouble())
+                updatePreview(seekBar, progress)
             }
 
             override fun onStartTrackingTouch(seekBar: SeekBar) {
@@ -192,7 +213,8 @@ class PlayerControlView(context: Context) : ConstraintLayout(context), PlayerEve
             }
 
             override fun onStopTrackingTouch(seekBar: SeekBar) {
-                player?.seek(progressBar.progress.toLong())
+                player?.scrubEnd(progressBar.progress.toDouble())
+                previewImage.visibility = View.GONE
                 shouldUpdateProgress = true;
             }
         })
@@ -214,21 +236,34 @@ class PlayerControlView(context: Context) : ConstraintLayout(context), PlayerEve
         imageView?.setImageResource(resId)
     }
 
-    override fun onPropertyChange(name: String?, value: Any?) {
-        if (value == null) return
-        if (name.equals("duration")) {
-            val duration = value as Double
+    // shows the generated frame above the thumb, hidden while there is none for that time
+    private fun updatePreview(seekBar: SeekBar, progress: Int) {
+        val frame = player?.thumbnail(progress.toDouble()) {
+            // the sheet was read in the background, show it if the thumb is still held
+            post { if (!shouldUpdateProgress) updatePreview(seekBar, seekBar.progress) }
+        }
+        if (frame == null) {
+            previewImage.visibility = View.GONE
+            return
+        }
+        previewImage.setImageBitmap(frame)
+        previewImage.visibility = View.VISIBLE
+        val track = seekBar.width - seekBar.paddingLeft - seekBar.paddingRight
+        val thumbX = seekBar.paddingLeft + if (seekBar.max > 0) track * progress / seekBar.max else 0
+        previewImage.translationX = (thumbX - PREVIEW_WIDTH / 2f).coerceIn(0f, maxOf(0, seekBar.width - PREVIEW_WIDTH).toFloat())
+    }
+
+    fun updateProgress(position: Double, duration: Double) {
+        if (progressBar.max != duration.toInt()) {
             progressBar.max = duration.toInt()
-            durationLabel.text = duration.toString()
             durationLabel.text = formatTime(progressBar.progress, progressBar.max)
             requestLayout()
-        } else if (name.equals("time-pos")) {
-            if (!shouldUpdateProgress) {
-                return
-            }
-
-            val time = value as Double
-            progressBar.progress = time.toInt()
+        }
+        if (!shouldUpdateProgress) {
+            return
+        }
+        if (progressBar.progress != position.toInt()) {
+            progressBar.progress = position.toInt()
             durationLabel.text = formatTime(progressBar.progress, progressBar.max)
         }
     }
@@ -258,5 +293,6 @@ class PlayerControlView(context: Context) : ConstraintLayout(context), PlayerEve
         val ICON_SMALL_SIZE = 24 * 3
         val ICON_SIZE = 32 * 3
         val ICON_TAG = 2
+        val PREVIEW_WIDTH = 160 * 2
     }
 }
\ No newline at end of file
@@ -1,6 +1,11 @@
 package top.ourfor.app.iPlayClient;
 
+// property ids are the constants of PlayerProperty, only the overload matching the observed format is called
 public interface PlayerEventListener {
-    default void onPropertyChange(String name, Object value) {};
+    default void onPropertyChange(int id, double value) {}
+    default void onPropertyChange(int id, boolean value) {}
+    default void onPropertyChange(int id, long value) {}
+    // string and node values, null when the property is unavailable or observed without a format
+    default void onPropertyChange(int id, Object value) {}
     default void onWindowSizeChange() {}
 }
@@ -0,0 +1,154 @@
+package top.ourfor.app.iPlayClient;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps initialized, idle players around so opening a video does not pay for mpv create/option/init.
+ * Views acquire a player and release it when they go away, a released player is stopped, its per-file
+ * state is reset and it is kept until the pool is full or it stayed idle longer than the idle timeout.
+ */
+@RequiresApi(api = Build.VERSION_CODES.N)
+public class PlayerPool {
+    private static class Entry {
+        final PlayerViewModel player;
+        final long releasedAt;
+
+        Entry(PlayerViewModel player, long releasedAt) {
+            this.player = player;
+            this.releasedAt = releasedAt;
+        }
+    }
+
+    private static final String TAG = "PlayerPool";
+    private static PlayerPool shared;
+
+    private final ArrayDeque<Entry> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "player-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int capacity = 2;
+    private long idleTimeout = TimeUnit.MINUTES.toMillis(5);
+    private String configDir;
+    private String cacheDir;
+    private String fontDir;
+
+    public static synchronized PlayerPool shared() {
+        if (shared == null) {
+            shared = new PlayerPool();
+        }
+        return shared;
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        trim(SystemClock.elapsedRealtime());
+    }
+
+    public synchronized void setIdleTimeout(long millis) {
+        this.idleTimeout = millis;
+        trim(SystemClock.elapsedRealtime());
+    }
+
+    // creates players in the background until count are idle, later acquires with the same directories reuse them
+    public void prewarm(String configDir, String cacheDir, String fontDir, int count) {
+        executor.execute(() -> {
+            while (true) {
+                synchronized (this) {
+                    configure(configDir, cacheDir, fontDir);
+                    if (idle.size() >= Math.min(count, capacity)) break;
+                }
+                PlayerViewModel player = new PlayerViewModel(configDir, cacheDir, fontDir);
+                synchronized (this) {
+                    idle.push(new Entry(player, SystemClock.elapsedRealtime()));
+                }
+            }
+            scheduleTrim();
+        });
+    }
+
+    public PlayerViewModel acquire(String configDir, String cacheDir, String fontDir) {
+        long start = SystemClock.elapsedRealtime();
+        PlayerViewModel player = null;
+        synchronized (this) {
+            configure(configDir, cacheDir, fontDir);
+            Entry entry = idle.poll();
+            if (entry != null) player = entry.player;
+        }
+        boolean warm = player != null;
+        if (player == null) {
+            player = new PlayerViewModel(configDir, cacheDir, fontDir);
+        }
+        Log.d(TAG, "acquire " + (warm ? "warm" : "cold") + " player in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return player;
+    }
+
+    // the player is back in the pool, or destroyed, once mpv stopped its file, so no acquire races the stop,
+    // the returned future completes then
+    public CompletableFuture<Void> release(PlayerViewModel player) {
+        return player.reset().handleAsync((result, error) -> {
+            boolean pooled = false;
+            synchronized (this) {
+                if (error == null && idle.size() < capacity && idleTimeout > 0) {
+                    idle.push(new Entry(player, SystemClock.elapsedRealtime()));
+                    pooled = true;
+                }
+            }
+            if (!pooled) player.destroy();
+            scheduleTrim();
+            return null;
+        }, executor);
+    }
+
+    // players created for other directories are not reusable, drop them
+    private void configure(String configDir, String cacheDir, String fontDir) {
+        if (Objects.equals(this.configDir, configDir) &&
+            Objects.equals(this.cacheDir, cacheDir) &&
+            Objects.equals(this.fontDir, fontDir)) {
+            return;
+        }
+        this.configDir = configDir;
+        this.cacheDir = cacheDir;
+        this.fontDir = fontDir;
+        while (!idle.isEmpty()) {
+            idle.poll().player.destroy();
+        }
+    }
+
+    private void scheduleTrim() {
+        long delay;
+        synchronized (this) {
+            delay = idleTimeout;
+        }
+        executor.schedule(() -> {
+            synchronized (this) {
+                trim(SystemClock.elapsedRealtime());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void trim(long now) {
+        Iterator<Entry> iterator = idle.descendingIterator();
+        int size = idle.size();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (size <= capacity && now - entry.releasedAt < idleTimeout) continue;
+            iterator.remove();
+            size--;
+            entry.player.destroy();
+        }
+    }
+}
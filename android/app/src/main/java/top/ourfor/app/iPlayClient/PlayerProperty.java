@@ -0,0 +1,29 @@
+package top.ourfor.app.iPlayClient;
+
+import top.ourfor.lib.mpv.MPV;
+
+// observed mpv properties, the id is passed as reply_userdata and comes back with every change
+public class PlayerProperty {
+    public static final int TimePos = 1;
+    public static final int Duration = 2;
+    public static final int PausedForCache = 3;
+    public static final int Pause = 4;
+    public static final int TrackList = 5;
+    // sampled by QosCollector, not dispatched to the delegate
+    public static final int FrameDropCount = 6;
+    public static final int DecoderFrameDropCount = 7;
+    public static final int CacheDuration = 8;
+    public static final int CacheSpeed = 9;
+    public static final int VideoBitrate = 10;
+    public static final int AudioBitrate = 11;
+    public static final int HwdecCurrent = 12;
+    public static final int EstimatedVfFps = 13;
+
+    static void observe(MPV mpv) {
+        mpv.observeProperty(TimePos, "time-pos", MPV.MPV_FORMAT_DOUBLE);
+        mpv.observeProperty(Duration, "duration", MPV.MPV_FORMAT_DOUBLE);
+        mpv.observeProperty(PausedForCache, "paused-for-cache", MPV.MPV_FORMAT_FLAG);
+        mpv.observeProperty(Pause, "pause", MPV.MPV_FORMAT_FLAG);
+        mpv.observeProperty(TrackList, "track-list", MPV.MPV_FORMAT_NODE);
+    }
+}
@@ -4,7 +4,6 @@ import android.R
 import android.annotation.SuppressLint
 import android.content.Context
 import android.content.pm.ActivityInfo
-import android.content.res.AssetManager
 import android.graphics.Color
 import android.graphics.drawable.GradientDrawable
 import android.os.Build
@@ -23,8 +22,6 @@ import com.facebook.react.uimanager.events.RCTEventEmitter
 import top.ourfor.app.iPlayClient.Player.PlayEventType
 import top.ourfor.lib.mpv.TrackItem
 import top.ourfor.lib.mpv.TrackItem.SubtitleTrackName
-import java.io.File
-import java.io.FileOutputStream
 import java.time.Duration
 
 
@@ -43,10 +40,14 @@ class PlayerView(
     private var contentView: PlayerContentView
     private var fullscreenView: PlayerFullscreenView? = null
     private var isFullscreen = false
-    private var duration: Double = 0.0
-    private var position: Double = 0.0
+    @Volatile private var duration: Double = 0.0
+    @Volatile private var position: Double = 0.0
     var themedReactContext: ThemedReactContext? = null
-    var onPlayStateChange: (data: HashMap<String, Any>) -> Unit  = {}
+    private val state = PlaybackState()
+    private val updateControl = Runnable {
+        controlView?.updateProgress(position, duration)
+    }
+    var onPlayStateChange: (state: PlaybackState) -> Unit  = {}
     var url: String? = null
         set(value) {
             field = value
@@ -71,8 +72,6 @@ class PlayerView(
         contentLayoutParams.rightToRight = LayoutParams.PARENT_ID;
         addView(contentView, contentLayoutParams)
 
-        copySubtitleFont(context.filesDir.path)
-
         player?.initialize(context.filesDir.path, context.cacheDir.path, FontModule.getFontPath(context))
         val viewModel = player?.viewModel
         if (subtitleFontName != null) {
@@ -96,44 +95,38 @@ class PlayerView(
         fullscreenView?.getWindow()?.setWindowAnimations(R.style.Animation_Dialog)
     }
 
-    override fun onPropertyChange(name: String?, value: Any?) {
-        this.controlView?.post {
-            this.controlView?.onPropertyChange(name, value)
-        }
-        if (value == null) {
-            if (name.equals("track-list")) {
-                Log.d(TAG, "load track list")
-//                contentView.viewModel.subtitles()
-//                contentView.viewModel.useSubtitle(1)
+    override fun onPropertyChange(id: Int, value: Double) {
+        when (id) {
+            PlayerProperty.TimePos -> {
+                position = value
+                controlView?.post(updateControl)
+                emit(PlayEventType.PlayEventTypeOnProgress)
             }
-            return
-        }
-        
-        if (name.equals("time-pos") ||
-            name.equals("pause") ||
-            name.equals("paused-for-cache")) {
-            var state = PlayEventType.PlayEventTypeOnProgress
-            val data = HashMap<String, Any>()
-            if (name.equals("time-pos")) {
-                state = PlayEventType.PlayEventTypeOnProgress
-                position = value as Double
-                data.put("duration", duration);
-                data.put("position", position);
-            } else if (name.equals("pause")) {
-                state = PlayEventType.PlayEventTypeOnPause
-                data.put("duration", duration);
-                data.put("position", position);
-            } else if (name.equals("paused-for-cache")) {
-                state = PlayEventType.PlayEventTypeOnPauseForCache
+            PlayerProperty.Duration -> {
+                duration = value
+                controlView?.post(updateControl)
             }
+        }
+    }
+
+    override fun onPropertyChange(id: Int, value: Boolean) {
+        when (id) {
+            PlayerProperty.Pause -> emit(PlayEventType.PlayEventTypeOnPause)
+            PlayerProperty.PausedForCache -> emit(PlayEventType.PlayEventTypeOnPauseForCache)
+        }
+    }
 
-            data.put("type", state.value)
-            onPlayStateChange(data)
-        } else if (name.equals("duration")) {
-            duration = value as Double
+    override fun onPropertyChange(id: Int, value: Any?) {
+        if (id == PlayerProperty.TrackList) {
+            Log.d(TAG, "load track list")
         }
     }
 
+    private fun emit(type: PlayEventType) {
+        state.set(type.value, position, duration)
+        onPlayStateChange(state)
+    }
+
     override fun onWindowSizeChange() {
         val activity = themedReactContext?.currentActivity ?: return
         val window = activity.window
@@ -174,21 +167,9 @@ class PlayerView(
         }
     }
 
-    fun copySubtitleFont(configDir: String) {
-        var ins = context.assets.open("subfont.ttf", AssetManager.ACCESS_STREAMING)
-        val outFile = File("$configDir/subfont.ttf")
-        val out = FileOutputStream(outFile)
-        if (outFile.length() == ins.available().toLong()) {
-            return
-        }
-        ins.copyTo(out)
-        ins.close()
-        out.close()
-    }
-
     override fun onDetachedFromWindow() {
-        Log.d(TAG, "destroy player")
-        contentView.viewModel.destroy()
+        Log.d(TAG, "release player")
+        contentView.destroy()
         super.onDetachedFromWindow()
     }
 
@@ -6,7 +6,6 @@ import android.view.View;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
-import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableMap;
@@ -39,16 +38,7 @@ public class PlayerViewManager extends SimpleViewManager<View> {
         PlayerView playerView = new PlayerView(themedReactContext, "");
         playerView.setThemedReactContext(themedReactContext);
         playerView.setOnPlayStateChange((state) -> {
-            WritableMap event = Arguments.createMap();
-            state.forEach((k, v) -> {
-                if (v instanceof Double) {
-                    event.putDouble(k, (Double) v);
-                } else if (v instanceof Integer) {
-                    event.putInt(k, (Integer)v);
-                } else {
-                    event.putString(k, v.toString());
-                }
-            });
+            WritableMap event = state.toWritableMap();
             ReactContext context = themedReactContext;
             context.getJSModule(RCTEventEmitter.class)
                     .receiveEvent(playerView.getId(), "onPlayStateChange", event);
@@ -1,30 +1,54 @@
 package top.ourfor.app.iPlayClient;
 
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_END_FILE;
 import static top.ourfor.lib.mpv.MPV.MPV_EVENT_PROPERTY_CHANGE;
-import static top.ourfor.lib.mpv.MPV.MPV_EVENT_SHUTDOWN;
-import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_DOUBLE;
-import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_FLAG;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_START_FILE;
 import static top.ourfor.lib.mpv.TrackItem.SubtitleTrackName;
 
+import android.graphics.Bitmap;
+import android.os.Build;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
+import androidx.annotation.RequiresApi;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import top.ourfor.lib.mpv.EventDispatcher;
 import top.ourfor.lib.mpv.MPV;
 import top.ourfor.lib.mpv.TrackItem;
 
-public class PlayerViewModel implements Player {
+@RequiresApi(api = Build.VERSION_CODES.N)
+public class PlayerViewModel implements Player, EventDispatcher.Handler {
     public PlayerEventListener delegate;
     public String subtitleFontName;
     public String subtitleFontDirectory;
-    public Thread eventLoop;
-    public double _duration;
+    private boolean watching = false;
+    public volatile double _duration;
 
     public String url = null;
+    // MediaKey of the latest load, for the calls made on the ui thread
+    private volatile String loadKey;
+    // keys of the loads whose MPV_EVENT_START_FILE has not arrived yet, oldest first
+    private final ConcurrentLinkedQueue<String> loads = new ConcurrentLinkedQueue<>();
+    // event thread only: MediaKey of the file mpv plays, time-pos events are recorded for it
+    private String fileKey;
+    // event thread only: -1 until the first time-pos of the current file
+    private double position = -1;
     private MPV mpv;
+    private volatile List<TrackItem> tracks = Collections.emptyList();
+    private final PropertyDispatcher dispatcher = new PropertyDispatcher();
+    private final PlaybackTracer tracer = new PlaybackTracer();
+    private final QosCollector qos;
+    private final SeekScheduler seeks = new SeekScheduler((target, flags) ->
+            mpv.commandAsync("seek", String.valueOf(target), flags));
     public PlayerViewModel(String configDir, String cacheDir, String fontDir) {
+        qos = new QosCollector(cacheDir);
         mpv = new MPV();
         mpv.create();
 //        mpv.setOptionString("profile", "fast");
@@ -59,6 +83,12 @@ public class PlayerViewModel implements Player {
     @Override
     public void setDelegate(PlayerEventListener delegate) {
         this.delegate = delegate;
+        dispatcher.setListener(delegate);
+    }
+
+    // limits how often a property change reaches the delegate, latest value wins, maxHz <= 0 delivers every change
+    public void setDispatchRate(int id, double maxHz) {
+        dispatcher.setMaxRate(id, maxHz);
     }
 
     @Override
@@ -80,7 +110,45 @@ public class PlayerViewModel implements Player {
 
     @Override
     public void loadVideo(String url) {
-        mpv.command("loadfile", url);
+        // the view is created with an empty url before the real one arrives
+        if (url == null || url.isEmpty()) return;
+        tracer.begin(url, System.nanoTime());
+        String key = resumeAt(url);
+        ThumbnailCache.shared().generate(key, url);
+        PlaybackReporter.shared().onLoad(this, key);
+        mpv.command("loadfile", MediaProxy.shared().url(url));
+    }
+
+    @Override
+    public CompletableFuture<Object> loadVideoAsync(String url) {
+        if (url == null || url.isEmpty()) return CompletableFuture.completedFuture(null);
+        tracer.begin(url, System.nanoTime());
+        String key = resumeAt(url);
+        ThumbnailCache.shared().generate(key, url);
+        PlaybackReporter.shared().onLoad(this, key);
+        CompletableFuture<Object> future = mpv.commandAsync("loadfile", MediaProxy.shared().url(url));
+        // a rejected loadfile starts no file
+        future.whenComplete((result, error) -> {
+            if (error != null) loads.remove(key);
+        });
+        return future;
+    }
+
+    // the start option applies to the next loadfile, set on every load so a previous position does not leak
+    private String resumeAt(String url) {
+        String key = MediaKey.of(url);
+        loadKey = key;
+        loads.add(key);
+        double start = ResumeStore.shared().position(key);
+        mpv.setOptionString("start", start > 0 ? String.valueOf(start) : "none");
+        return key;
+    }
+
+    // event thread only
+    private void saveResumePosition() {
+        if (fileKey == null || position < 0) return;
+        ResumeStore.shared().record(fileKey, position, _duration);
+        ResumeStore.shared().flushAsync();
     }
 
     @Override
@@ -88,29 +156,37 @@ public class PlayerViewModel implements Player {
         mpv.setStringProperty("android-surface-size", newSize);
     }
 
+    @Override
+    public List<TrackItem> tracks() {
+        return tracks;
+    }
+
     @Override
     public List<TrackItem> subtitles() {
-        // video/audio/sub
-        Log.d(TAG, "obtain track list");
-        Long subtitleCount = mpv.getLongProperty("track-list/count");
         ArrayList<TrackItem> trackItems = new ArrayList<>();
-        for (long i = 0; i < subtitleCount; i++) {
-            String type = mpv.getStringProperty(String.format("track-list/%d/type", i));
-            if (!type.equals(SubtitleTrackName)) continue;
-            Long id = mpv.getLongProperty(String.format("track-list/%d/id", i));
-            String lang = mpv.getStringProperty(String.format("track-list/%d/lang", i));
-            String title = mpv.getStringProperty(String.format("track-list/%d/title", i));
-            Log.d(TAG, "id: " + id + "\ntype: " + type + "\nlang: " + lang + "\ntitle: " + title);
-            TrackItem trackItem = new TrackItem();
-            trackItem.id = Math.toIntExact(id);
-            trackItem.type = SubtitleTrackName;
-            trackItem.title = title;
-            trackItem.lang = lang;
-            trackItems.add(trackItem);
+        for (TrackItem item : tracks) {
+            if (!SubtitleTrackName.equals(item.type)) continue;
+            trackItems.add(item);
         }
         return trackItems;
     }
 
+    // called on the event loop with the track-list node the change event carries
+    private void reloadTracks(Object node) {
+        if (!(node instanceof List)) {
+            tracks = Collections.emptyList();
+            return;
+        }
+        List<?> list = (List<?>) node;
+        ArrayList<TrackItem> trackItems = new ArrayList<>(list.size());
+        for (Object item : list) {
+            if (!(item instanceof Map)) continue;
+            trackItems.add(TrackItem.fromNode((Map<String, Object>) item));
+        }
+        Log.d(TAG, "load track list, count: " + trackItems.size());
+        tracks = Collections.unmodifiableList(trackItems);
+    }
+
     @Override
     public void useSubtitle(int id) {
         Log.d(TAG, "use subtitle " + id);
@@ -138,6 +214,26 @@ public class PlayerViewModel implements Player {
         mpv.command("seek", String.valueOf(timeInSeconds), "absolute+keyframes");
     }
 
+    @Override
+    public CompletableFuture<Object> seekAsync(long timeInSeconds) {
+        return mpv.commandAsync("seek", String.valueOf(timeInSeconds), "absolute+keyframes");
+    }
+
+    @Override
+    public void scrub(double timeInSeconds) {
+        seeks.scrub(timeInSeconds);
+    }
+
+    @Override
+    public void scrubEnd(double timeInSeconds) {
+        seeks.commit(timeInSeconds);
+    }
+
+    @Override
+    public Bitmap thumbnail(double timeInSeconds, Runnable onReady) {
+        return ThumbnailCache.shared().frame(loadKey, timeInSeconds, onReady);
+    }
+
     @Override
     public boolean isPlaying() {
         return !(mpv.getBoolProperty("pause"));
@@ -153,53 +249,120 @@ public class PlayerViewModel implements Player {
         mpv.setBoolProperty("pause", true);
     }
 
+    @Override
+    public CompletableFuture<Object> resumeAsync() {
+        return mpv.setPropertyAsync("pause", "no");
+    }
+
+    @Override
+    public CompletableFuture<Object> pauseAsync() {
+        return mpv.setPropertyAsync("pause", "yes");
+    }
+
     @Override
     public void stop() {
         mpv.command("stop");
     }
 
+    // drops everything tied to the current file and view so the player can be leased again,
+    // completes once mpv stopped the file and unpaused, the caller does not wait for either
+    public CompletableFuture<Void> reset() {
+        tracer.finish(System.nanoTime());
+        ThumbnailCache.shared().cancel(loadKey);
+        PlaybackReporter.shared().onStop(this);
+        loadKey = null;
+        // a load still in flight starts a file nothing is recorded for, the stop below saves the current one
+        loads.clear();
+        seeks.cancel();
+        setDelegate(null);
+        // the surface goes away with the view, mpv lets go of it before this returns
+        detach();
+        url = null;
+        tracks = Collections.emptyList();
+        return CompletableFuture.allOf(mpv.commandAsync("stop"), mpv.setPropertyAsync("pause", "no"));
+    }
+
     @Override
     public void destroy() {
         mpv.command("stop");
-        mpv.command("quit");
+        // the handle is destroyed on the event dispatcher thread, see onClosed
+        EventDispatcher.shared().unregister(mpv);
     }
 
     public void watch() {
-        if (eventLoop ==  null) {
-            mpv.observeProperty(0, "time-pos", MPV.MPV_FORMAT_DOUBLE);
-            mpv.observeProperty(0, "duration", MPV.MPV_FORMAT_DOUBLE);
-            mpv.observeProperty(0, "paused-for-cache", MPV.MPV_FORMAT_FLAG);
-            mpv.observeProperty(0, "pause", MPV.MPV_FORMAT_FLAG);
-            mpv.observeProperty(0, "track-list", MPV.MPV_FORMAT_NONE);
-            eventLoop = new Thread(() -> {
-                while (true) {
-                    MPV.Event e = mpv.waitEvent(-1);
-                    if (e == null) {
-                        Log.d(TAG, "event is null, close mpv player");
-                        break;
-                    }
-                    if (e.type == MPV_EVENT_SHUTDOWN) {
-                        Log.d(TAG, "close mpv player");
-                        if (mpv != null) mpv.destroy();
-                        mpv = null;
-                        break;
-                    }
-
-                    if (e.type == MPV_EVENT_PROPERTY_CHANGE) {
-                        if (delegate == null) return;
-                        Object value = null;
-                        if (e.format == MPV_FORMAT_DOUBLE) {
-                            value = mpv.getDoubleProperty(e.prop);
-                        } else if (e.format == MPV_FORMAT_FLAG) {
-                            value = mpv.getBoolProperty(e.prop);
-                        }
-                        delegate.onPropertyChange(e.prop, value);
-                    }
+        if (watching) return;
+        watching = true;
+        PlayerProperty.observe(mpv);
+        QosCollector.observe(mpv);
+        QosCollector.collectors.add(qos);
+        dispatcher.setMaxRate(PlayerProperty.TimePos, PROGRESS_DISPATCH_RATE);
+        EventDispatcher.shared().register(mpv, this);
+    }
+
+    @Override
+    public void onEvent(MPV.Event e) {
+        if (mpv.completeRequest(e)) return;
+        long now = System.nanoTime();
+        tracer.onEvent(e.type, now);
+        qos.onEvent(e.type, now);
+        if (e.type == MPV_EVENT_START_FILE) {
+            // events before this one belonged to the previous file, the ones after to the oldest load
+            saveResumePosition();
+            fileKey = loads.poll();
+            position = -1;
+            _duration = 0;
+        } else if (e.type == MPV_EVENT_END_FILE) {
+            saveResumePosition();
+            position = -1;
+        } else if (e.type == MPV_EVENT_PROPERTY_CHANGE) {
+            if (qos.onProperty(e)) return;
+            if (e.replyUserdata == PlayerProperty.TrackList) reloadTracks(e.node);
+            if (e.replyUserdata == PlayerProperty.TimePos && e.format == MPV.MPV_FORMAT_DOUBLE) {
+                if (fileKey != null) {
+                    position = e.doubleValue;
+                    ResumeStore.shared().record(fileKey, position, _duration);
+                    PlaybackReporter.shared().onPosition(this, fileKey, position, _duration);
                 }
-            });
+                // still the file a pending load replaces, neither traced nor shown
+                if (!loads.isEmpty()) return;
+                tracer.onTimePos(e.doubleValue, now);
+            }
+            if (e.replyUserdata == PlayerProperty.Pause && e.format == MPV.MPV_FORMAT_FLAG) PlaybackReporter.shared().onPause(this, e.flag);
+            if (e.replyUserdata == PlayerProperty.Duration && e.format == MPV.MPV_FORMAT_DOUBLE) _duration = e.doubleValue;
+            if (e.replyUserdata == PlayerProperty.PausedForCache && e.format == MPV.MPV_FORMAT_FLAG) tracer.onPausedForCache(e.flag, now);
+            dispatcher.dispatch(e, now);
         }
-        eventLoop.start();
+    }
+
+    @Override
+    public void onIdle() {
+        long now = System.nanoTime();
+        dispatcher.flush(now, false);
+        qos.sample(now);
+    }
+
+    @Override
+    public double nextTimeout() {
+        long now = System.nanoTime();
+        double timeout = dispatcher.nextTimeout(now);
+        double sample = qos.nextTimeout(now);
+        if (timeout < 0) return sample;
+        if (sample < 0) return timeout;
+        return Math.min(timeout, sample);
+    }
+
+    @Override
+    public void onClosed() {
+        Log.d(TAG, "close mpv player");
+        tracer.finish(System.nanoTime());
+        saveResumePosition();
+        PlaybackReporter.shared().onStop(this);
+        QosCollector.collectors.remove(qos);
+        dispatcher.flush(System.nanoTime(), true);
+        mpv.cancelRequests();
+        mpv.destroy();
     }
 
     static String TAG = "PlayerViewModel";
+    static double PROGRESS_DISPATCH_RATE = 4;
 }
@@ -0,0 +1,124 @@
+package top.ourfor.app.iPlayClient;
+
+import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_DOUBLE;
+import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_FLAG;
+import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_INT64;
+
+import java.util.Arrays;
+
+import top.ourfor.lib.mpv.MPV;
+
+/**
+ * Rate limits property changes on their way from the mpv event loop to a {@link PlayerEventListener}.
+ * A property with a max rate delivers at most that many changes per second, values arriving in between
+ * are coalesced and only the latest one is delivered once the interval elapses.
+ * Properties without a rate are delivered immediately, pending values are flushed first so the listener
+ * never sees a discrete transition before the progress that preceded it.
+ * Slots are indexed by the {@link PlayerProperty} id and keep values unboxed, dispatching a flag,
+ * int64 or double change does not allocate.
+ */
+class PropertyDispatcher {
+    private static class Slot {
+        final int id;
+        long interval;
+        long lastDelivered;
+        boolean pending;
+        int format;
+        long bits;
+        Object value;
+
+        Slot(int id) {
+            this.id = id;
+        }
+    }
+
+    private Slot[] slots = new Slot[8];
+    private volatile PlayerEventListener listener;
+
+    void setListener(PlayerEventListener listener) {
+        this.listener = listener;
+    }
+
+    // maxHz <= 0 means every change is delivered immediately
+    synchronized void setMaxRate(int id, double maxHz) {
+        slot(id).interval = maxHz > 0 ? (long) (1_000_000_000L / maxHz) : 0;
+    }
+
+    synchronized void dispatch(MPV.Event e, long now) {
+        int id = (int) e.replyUserdata;
+        Slot slot = id >= 0 && id < slots.length ? slots[id] : null;
+        if (slot == null || slot.interval == 0) {
+            flush(now, true);
+            deliver(id, e.format, bits(e), e.string != null ? e.string : e.node);
+            return;
+        }
+        if (now - slot.lastDelivered >= slot.interval) {
+            slot.pending = false;
+            slot.value = null;
+            slot.lastDelivered = now;
+            deliver(id, e.format, bits(e), e.string != null ? e.string : e.node);
+        } else {
+            slot.pending = true;
+            slot.format = e.format;
+            slot.bits = bits(e);
+            slot.value = e.string != null ? e.string : e.node;
+        }
+    }
+
+    // delivers pending values whose interval elapsed, or all of them when force is set
+    synchronized void flush(long now, boolean force) {
+        for (Slot slot : slots) {
+            if (slot == null || !slot.pending) continue;
+            if (!force && now - slot.lastDelivered < slot.interval) continue;
+            Object value = slot.value;
+            slot.pending = false;
+            slot.value = null;
+            slot.lastDelivered = now;
+            deliver(slot.id, slot.format, slot.bits, value);
+        }
+    }
+
+    // seconds until the next pending value is due, -1 when nothing is pending, suitable as mpv wait timeout
+    synchronized double nextTimeout(long now) {
+        long next = Long.MAX_VALUE;
+        for (Slot slot : slots) {
+            if (slot == null || !slot.pending) continue;
+            next = Math.min(next, slot.lastDelivered + slot.interval - now);
+        }
+        if (next == Long.MAX_VALUE) return -1;
+        return Math.max(next, 0) / 1e9;
+    }
+
+    private Slot slot(int id) {
+        if (id >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, id + 1));
+        }
+        Slot slot = slots[id];
+        if (slot == null) {
+            slot = new Slot(id);
+            slots[id] = slot;
+        }
+        return slot;
+    }
+
+    private static long bits(MPV.Event e) {
+        if (e.format == MPV_FORMAT_FLAG) return e.flag ? 1 : 0;
+        if (e.format == MPV_FORMAT_INT64) return e.int64;
+        if (e.format == MPV_FORMAT_DOUBLE) return Double.doubleToRawLongBits(e.doubleValue);
+        return 0;
+    }
+
+    private void deliver(int id, int format, long bits, Object value) {
+        PlayerEventListener listener = this.listener;
+        if (listener == null) return;
+        if (format == MPV_FORMAT_DOUBLE) {
+            listener.onPropertyChange(id, Double.longBitsToDouble(bits));
+        } else if (format == MPV_FORMAT_FLAG) {
+            listener.onPropertyChange(id, bits != 0);
+        } else if (format == MPV_FORMAT_INT64) {
+            listener.onPropertyChange(id, bits);
+        } else {
+            listener.onPropertyChange(id, value);
+        }
+    }
+}
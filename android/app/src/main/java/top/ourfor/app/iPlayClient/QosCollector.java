@@ -0,0 +1,178 @@
+package top.ourfor.app.iPlayClient;
+
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_END_FILE;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_FILE_LOADED;
+import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_DOUBLE;
+import static top.ourfor.lib.mpv.MPV.MPV_FORMAT_INT64;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import top.ourfor.lib.mpv.MPV;
+
+/**
+ * Samples decoder, cache and throughput properties of one player once per interval into a ring buffer
+ * of primitive arrays, nothing is allocated per sample. Samples are only taken while a file is loaded.
+ * When logging is enabled every sample is also appended to a size capped, rotating csv file in the cache dir.
+ */
+class QosCollector {
+    static final int CAPACITY = 300;
+    static final long INTERVAL = 1_000_000_000L;
+    static final long MAX_LOG_SIZE = 1024 * 1024;
+    static final String TAG = "QosCollector";
+
+    // every live collector, read by PlaybackQosModule
+    static final Set<QosCollector> collectors = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    static volatile boolean logEnabled = false;
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "qos-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static void observe(MPV mpv) {
+        mpv.observeProperty(PlayerProperty.FrameDropCount, "frame-drop-count", MPV_FORMAT_INT64);
+        mpv.observeProperty(PlayerProperty.DecoderFrameDropCount, "decoder-frame-drop-count", MPV_FORMAT_INT64);
+        // the full demuxer-cache-state is a node, its duration and the cache speed are what we sample
+        mpv.observeProperty(PlayerProperty.CacheDuration, "demuxer-cache-duration", MPV_FORMAT_DOUBLE);
+        mpv.observeProperty(PlayerProperty.CacheSpeed, "cache-speed", MPV_FORMAT_INT64);
+        mpv.observeProperty(PlayerProperty.VideoBitrate, "video-bitrate", MPV_FORMAT_DOUBLE);
+        mpv.observeProperty(PlayerProperty.AudioBitrate, "audio-bitrate", MPV_FORMAT_DOUBLE);
+        mpv.observeProperty(PlayerProperty.HwdecCurrent, "hwdec-current", MPV.MPV_FORMAT_STRING);
+        mpv.observeProperty(PlayerProperty.EstimatedVfFps, "estimated-vf-fps", MPV_FORMAT_DOUBLE);
+    }
+
+    private final File logFile;
+
+    // latest values, written by the event thread
+    private long frameDrops;
+    private long decoderDrops;
+    private double cacheDuration;
+    private long cacheSpeed;
+    private double videoBitrate;
+    private double audioBitrate;
+    private double fps;
+    private String hwdec;
+
+    private final long[] time = new long[CAPACITY];
+    private final long[] frameDropSamples = new long[CAPACITY];
+    private final long[] decoderDropSamples = new long[CAPACITY];
+    private final double[] cacheDurationSamples = new double[CAPACITY];
+    private final long[] cacheSpeedSamples = new long[CAPACITY];
+    private final double[] videoBitrateSamples = new double[CAPACITY];
+    private final double[] audioBitrateSamples = new double[CAPACITY];
+    private final double[] fpsSamples = new double[CAPACITY];
+    private final boolean[] hwdecSamples = new boolean[CAPACITY];
+    private int count;
+    private int next;
+    private boolean loaded;
+    private long nextSample;
+
+    QosCollector(String cacheDir) {
+        logFile = new File(cacheDir, "qos.csv");
+    }
+
+    // returns true when the event was one of the sampled properties
+    synchronized boolean onProperty(MPV.Event e) {
+        switch ((int) e.replyUserdata) {
+            case PlayerProperty.FrameDropCount: frameDrops = e.format == MPV_FORMAT_INT64 ? e.int64 : 0; return true;
+            case PlayerProperty.DecoderFrameDropCount: decoderDrops = e.format == MPV_FORMAT_INT64 ? e.int64 : 0; return true;
+            case PlayerProperty.CacheDuration: cacheDuration = e.format == MPV_FORMAT_DOUBLE ? e.doubleValue : 0; return true;
+            case PlayerProperty.CacheSpeed: cacheSpeed = e.format == MPV_FORMAT_INT64 ? e.int64 : 0; return true;
+            case PlayerProperty.VideoBitrate: videoBitrate = e.format == MPV_FORMAT_DOUBLE ? e.doubleValue : 0; return true;
+            case PlayerProperty.AudioBitrate: audioBitrate = e.format == MPV_FORMAT_DOUBLE ? e.doubleValue : 0; return true;
+            case PlayerProperty.EstimatedVfFps: fps = e.format == MPV_FORMAT_DOUBLE ? e.doubleValue : 0; return true;
+            case PlayerProperty.HwdecCurrent: hwdec = e.string; return true;
+            default: return false;
+        }
+    }
+
+    synchronized void onEvent(int type, long now) {
+        if (type == MPV_EVENT_FILE_LOADED) {
+            loaded = true;
+            nextSample = now;
+        } else if (type == MPV_EVENT_END_FILE) {
+            loaded = false;
+        }
+    }
+
+    synchronized void sample(long now) {
+        if (!loaded || now < nextSample) return;
+        nextSample = now + INTERVAL;
+        time[next] = now / 1_000_000;
+        frameDropSamples[next] = frameDrops;
+        decoderDropSamples[next] = decoderDrops;
+        cacheDurationSamples[next] = cacheDuration;
+        cacheSpeedSamples[next] = cacheSpeed;
+        videoBitrateSamples[next] = videoBitrate;
+        audioBitrateSamples[next] = audioBitrate;
+        fpsSamples[next] = fps;
+        hwdecSamples[next] = hwdec != null && !hwdec.equals("no");
+        if (logEnabled) log(next);
+        next = (next + 1) % CAPACITY;
+        count = Math.min(count + 1, CAPACITY);
+    }
+
+    // seconds until the next sample is due, -1 while no file is loaded
+    synchronized double nextTimeout(long now) {
+        if (!loaded) return -1;
+        return Math.max(nextSample - now, 0) / 1e9;
+    }
+
+    // the last samples, oldest first
+    synchronized WritableMap snapshot(int limit) {
+        int size = Math.min(limit, count);
+        WritableArray samples = Arguments.createArray();
+        for (int i = size; i > 0; i--) {
+            int index = (next - i + CAPACITY) % CAPACITY;
+            WritableMap sample = Arguments.createMap();
+            sample.putDouble("time", time[index]);
+            sample.putDouble("frameDropCount", frameDropSamples[index]);
+            sample.putDouble("decoderFrameDropCount", decoderDropSamples[index]);
+            sample.putDouble("cacheDuration", cacheDurationSamples[index]);
+            sample.putDouble("cacheSpeed", cacheSpeedSamples[index]);
+            sample.putDouble("videoBitrate", videoBitrateSamples[index]);
+            sample.putDouble("audioBitrate", audioBitrateSamples[index]);
+            sample.putDouble("fps", fpsSamples[index]);
+            sample.putBoolean("hwdec", hwdecSamples[index]);
+            samples.pushMap(sample);
+        }
+        WritableMap map = Arguments.createMap();
+        map.putString("hwdec", hwdec);
+        map.putArray("samples", samples);
+        return map;
+    }
+
+    private void log(int index) {
+        String line = time[index] + "," + frameDropSamples[index] + "," + decoderDropSamples[index] + "," +
+                cacheDurationSamples[index] + "," + cacheSpeedSamples[index] + "," +
+                videoBitrateSamples[index] + "," + audioBitrateSamples[index] + "," +
+                fpsSamples[index] + "," + hwdec + "\n";
+        writer.execute(() -> {
+            try {
+                if (logFile.length() > MAX_LOG_SIZE) {
+                    File rotated = new File(logFile.getParentFile(), "qos.1.csv");
+                    rotated.delete();
+                    logFile.renameTo(rotated);
+                }
+                try (FileWriter out = new FileWriter(logFile, true)) {
+                    out.write(line);
+                }
+            } catch (IOException e) {
+                Log.d(TAG, e.toString());
+            }
+        });
+    }
+}
@@ -0,0 +1,228 @@
+package top.ourfor.app.iPlayClient;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Playback position of every media played, keyed by {@link MediaKey}, read and updated by the player on its event thread.
+ * Positions are recorded in memory on every progress event, a writer appends the changed ones to a log every few
+ * seconds with one fsync per batch. The log is compacted into a snapshot of the live entries once it grew
+ * to several times their number. A position near the start or the end is stored as a tombstone.
+ */
+class ResumeStore {
+    private static class Entry {
+        double position;
+        double duration;
+        long updated;
+
+        Entry(double position, double duration, long updated) {
+            this.position = position;
+            this.duration = duration;
+            this.updated = updated;
+        }
+    }
+
+    private static final String TAG = "ResumeStore";
+    private static final long FLUSH_INTERVAL = 5_000;
+    private static final long LOAD_TIMEOUT = 500;
+    private static final double MIN_POSITION = 10;
+    private static final double END_MARGIN = 30;
+    private static final double MIN_CHANGE = 1;
+    private static final int MAX_ENTRIES = 1000;
+    private static final int MIN_COMPACT_LINES = 256;
+    private static ResumeStore shared;
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    // keys changed since the last flush, a removed key maps to null
+    private final HashMap<String, Entry> pending = new HashMap<>();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "resume-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private File logFile;
+    private int lines;
+
+    static synchronized ResumeStore shared() {
+        if (shared == null) {
+            shared = new ResumeStore();
+        }
+        return shared;
+    }
+
+    // reads the log on the calling thread, then starts the periodic flush
+    void load(File dir) {
+        File file = new File(dir, "resume.log");
+        HashMap<String, Entry> restored = new HashMap<>();
+        int count = 0;
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // key, position, duration, updated; a negative position removes the key
+                    String[] fields = line.split("\t");
+                    count++;
+                    if (fields.length < 4) continue;
+                    try {
+                        double position = Double.parseDouble(fields[1]);
+                        if (position < 0) {
+                            restored.remove(fields[0]);
+                        } else {
+                            restored.put(fields[0], new Entry(position, Double.parseDouble(fields[2]), Long.parseLong(fields[3])));
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // a torn last line after a crash
+                    }
+                }
+            } catch (IOException e) {
+                Log.d(TAG, e.toString());
+            }
+        }
+        synchronized (this) {
+            logFile = file;
+            lines = count;
+            for (Map.Entry<String, Entry> entry : restored.entrySet()) {
+                if (!entries.containsKey(entry.getKey())) entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        loaded.countDown();
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        Log.d(TAG, "loaded " + restored.size() + " positions from " + count + " lines");
+    }
+
+    // seconds to resume the media at, 0 when it should start from the beginning
+    double position(String key) {
+        if (key == null) return 0;
+        try {
+            loaded.await(LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            return entry != null ? entry.position : 0;
+        }
+    }
+
+    void record(String key, double position, double duration) {
+        if (key == null) return;
+        boolean finished = position < MIN_POSITION || (duration > 0 && position > duration - END_MARGIN);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (finished) {
+                if (entry == null) return;
+                entries.remove(key);
+                pending.put(key, null);
+                return;
+            }
+            if (entry != null && Math.abs(entry.position - position) < MIN_CHANGE) return;
+            if (entry == null) {
+                entry = new Entry(position, duration, System.currentTimeMillis());
+                entries.put(key, entry);
+                trim();
+            } else {
+                entry.position = position;
+                entry.duration = duration;
+                entry.updated = System.currentTimeMillis();
+            }
+            pending.put(key, entry);
+        }
+    }
+
+    // writes pending changes soon, for the end of a playback session
+    void flushAsync() {
+        writer.execute(this::flush);
+    }
+
+    private void flush() {
+        StringBuilder batch = new StringBuilder();
+        File file;
+        boolean compact;
+        synchronized (this) {
+            if (pending.isEmpty() || logFile == null) return;
+            for (Map.Entry<String, Entry> change : pending.entrySet()) {
+                append(batch, change.getKey(), change.getValue());
+            }
+            lines += pending.size();
+            pending.clear();
+            file = logFile;
+            compact = lines > Math.max(MIN_COMPACT_LINES, entries.size() * 4);
+        }
+        if (compact) {
+            compact(file);
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+        }
+    }
+
+    // rewrites the log as a snapshot of the live entries
+    private void compact(File file) {
+        StringBuilder snapshot = new StringBuilder();
+        int count;
+        synchronized (this) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                append(snapshot, entry.getKey(), entry.getValue());
+            }
+            count = entries.size();
+            lines = count;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write(snapshot.toString());
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.d(TAG, "replace log failed: " + file.getPath());
+        }
+        Log.d(TAG, "compacted log to " + count + " entries");
+    }
+
+    private static void append(StringBuilder out, String key, Entry entry) {
+        out.append(key).append('\t');
+        if (entry == null) {
+            out.append("-1\t0\t0\n");
+        } else {
+            out.append(entry.position).append('\t').append(entry.duration).append('\t').append(entry.updated).append('\n');
+        }
+    }
+
+    // forgets the least recently updated entries beyond the cap
+    private void trim() {
+        if (entries.size() <= MAX_ENTRIES) return;
+        ArrayList<Map.Entry<String, Entry>> sorted = new ArrayList<>(entries.entrySet());
+        sorted.sort((a, b) -> Long.compare(a.getValue().updated, b.getValue().updated));
+        Iterator<Map.Entry<String, Entry>> iterator = sorted.iterator();
+        while (entries.size() > MAX_ENTRIES && iterator.hasNext()) {
+            String key = iterator.next().getKey();
+            entries.remove(key);
+            pending.put(key, null);
+        }
+    }
+}
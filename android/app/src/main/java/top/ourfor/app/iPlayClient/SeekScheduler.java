@@ -0,0 +1,74 @@
+package top.ourfor.app.iPlayClient;
+
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps at most one seek in flight while the user drags the progress bar.
+ * Targets arriving while a seek runs replace each other, once it completes only the newest one is sought.
+ * Dragging uses fast keyframe seeks, the final target is sought by keyframe first and then refined by an
+ * exact seek unless a newer target arrived in between.
+ */
+@RequiresApi(api = Build.VERSION_CODES.N)
+class SeekScheduler {
+    interface Seeker {
+        CompletableFuture<Object> seek(double target, String flags);
+    }
+
+    static final String KEYFRAME = "absolute+keyframes";
+    static final String EXACT = "absolute+exact";
+
+    private final Seeker seeker;
+    private boolean inFlight;
+    private boolean hasPending;
+    private double pendingTarget;
+    private String pendingFlags;
+    private boolean pendingRefine;
+
+    SeekScheduler(Seeker seeker) {
+        this.seeker = seeker;
+    }
+
+    // a target while dragging
+    synchronized void scrub(double target) {
+        submit(target, KEYFRAME, false);
+    }
+
+    // the target where the drag ended
+    synchronized void commit(double target) {
+        submit(target, KEYFRAME, true);
+    }
+
+    synchronized void cancel() {
+        hasPending = false;
+    }
+
+    private void submit(double target, String flags, boolean refine) {
+        hasPending = true;
+        pendingTarget = target;
+        pendingFlags = flags;
+        pendingRefine = refine;
+        if (!inFlight) issue();
+    }
+
+    private void issue() {
+        double target = pendingTarget;
+        String flags = pendingFlags;
+        boolean refine = pendingRefine;
+        hasPending = false;
+        inFlight = true;
+        seeker.seek(target, flags).whenComplete((result, error) -> completed(target, refine));
+    }
+
+    private synchronized void completed(double target, boolean refine) {
+        inFlight = false;
+        if (hasPending) {
+            issue();
+        } else if (refine) {
+            submit(target, EXACT, false);
+        }
+    }
+}
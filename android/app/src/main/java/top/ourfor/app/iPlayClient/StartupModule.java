@@ -0,0 +1,33 @@
+package top.ourfor.app.iPlayClient;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+
+public class StartupModule extends ReactContextBaseJavaModule {
+    static private String moduleName = "StartupModule";
+
+    StartupModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    // called by the js side once the first screen rendered
+    @ReactMethod
+    public void markFirstFrame() {
+        StartupScheduler.shared().markFirstFrame();
+    }
+
+    @ReactMethod
+    public void trace(Promise promise) {
+        promise.resolve(StartupScheduler.shared().trace());
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return moduleName;
+    }
+}
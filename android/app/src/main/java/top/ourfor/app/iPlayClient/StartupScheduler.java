@@ -0,0 +1,214 @@
+package top.ourfor.app.iPlayClient;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the application startup tasks by their dependencies.
+ * Main tasks run on the thread calling start, in dependency order, so onCreate only blocks on them and
+ * on the background tasks they depend on. Background tasks run in parallel on a small pool as soon as
+ * their dependencies finished, lazy tasks run on the first thread that requires them.
+ * Every task records when it started, how long it waited for dependencies and how long it ran.
+ */
+public class StartupScheduler {
+    public enum Affinity {
+        MAIN,
+        BACKGROUND,
+        LAZY
+    }
+
+    private static class Task {
+        final String name;
+        final Affinity affinity;
+        final String[] dependencies;
+        final Runnable body;
+        final AtomicBoolean started = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String thread;
+        volatile long begin;
+        volatile long waited;
+        volatile long duration;
+
+        Task(String name, Affinity affinity, String[] dependencies, Runnable body) {
+            this.name = name;
+            this.affinity = affinity;
+            this.dependencies = dependencies;
+            this.body = body;
+        }
+    }
+
+    private static final String TAG = "StartupScheduler";
+    private static StartupScheduler shared;
+
+    private final LinkedHashMap<String, Task> tasks = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(3, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "startup-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private long origin;
+    private long created;
+    private long firstFrame;
+
+    public static synchronized StartupScheduler shared() {
+        if (shared == null) {
+            shared = new StartupScheduler();
+        }
+        return shared;
+    }
+
+    public synchronized StartupScheduler add(String name, Affinity affinity, String[] dependencies, Runnable body) {
+        tasks.put(name, new Task(name, affinity, dependencies, body));
+        return this;
+    }
+
+    public StartupScheduler add(String name, Affinity affinity, Runnable body) {
+        return add(name, affinity, new String[0], body);
+    }
+
+    // returns once every main task finished, background tasks keep running
+    public void start() {
+        List<Task> ordered;
+        synchronized (this) {
+            origin = SystemClock.elapsedRealtimeNanos();
+            ordered = sort();
+        }
+        // queued in dependency order, a pooled task only waits on tasks that were dequeued before it
+        for (Task task : ordered) {
+            if (task.affinity == Affinity.BACKGROUND) {
+                executor.execute(() -> run(task));
+            }
+        }
+        for (Task task : ordered) {
+            if (task.affinity == Affinity.MAIN) run(task);
+        }
+        synchronized (this) {
+            created = SystemClock.elapsedRealtimeNanos();
+        }
+        Log.d(TAG, "main tasks done in " + (created - origin) / 1_000_000 + "ms");
+    }
+
+    // blocks until the task finished, a lazy task is run on the calling thread
+    public void require(String name) {
+        Task task;
+        synchronized (this) {
+            task = tasks.get(name);
+        }
+        if (task == null) return;
+        if (task.affinity == Affinity.LAZY) run(task);
+        await(task);
+    }
+
+    public synchronized void markFirstFrame() {
+        if (firstFrame == 0) firstFrame = SystemClock.elapsedRealtimeNanos();
+    }
+
+    public synchronized WritableMap trace() {
+        WritableMap map = Arguments.createMap();
+        // process start is only known from N, before that the trace starts at onCreate
+        long processStart = origin;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            processStart = Process.getStartElapsedRealtime() * 1_000_000;
+        }
+        map.putDouble("applicationStart", millis(origin - processStart));
+        map.putDouble("applicationCreated", created > 0 ? millis(created - processStart) : -1);
+        map.putDouble("firstFrame", firstFrame > 0 ? millis(firstFrame - processStart) : -1);
+        WritableArray array = Arguments.createArray();
+        for (Task task : tasks.values()) {
+            WritableMap item = Arguments.createMap();
+            item.putString("name", task.name);
+            item.putString("affinity", task.affinity.name().toLowerCase(Locale.ROOT));
+            item.putString("thread", task.thread);
+            item.putBoolean("done", task.done.getCount() == 0);
+            item.putDouble("start", task.begin > 0 ? millis(task.begin - processStart) : -1);
+            item.putDouble("wait", millis(task.waited));
+            item.putDouble("duration", millis(task.duration));
+            array.pushMap(item);
+        }
+        map.putArray("tasks", array);
+        return map;
+    }
+
+    private void run(Task task) {
+        if (!task.started.compareAndSet(false, true)) return;
+        long begin = SystemClock.elapsedRealtimeNanos();
+        try {
+            for (String dependency : task.dependencies) {
+                require(dependency);
+            }
+            long start = SystemClock.elapsedRealtimeNanos();
+            task.thread = Thread.currentThread().getName();
+            task.begin = start;
+            task.waited = start - begin;
+            task.body.run();
+            task.duration = SystemClock.elapsedRealtimeNanos() - start;
+            Log.d(TAG, task.name + " on " + task.thread + " waited " + task.waited / 1_000_000 + "ms, ran " + task.duration / 1_000_000 + "ms");
+        } catch (RuntimeException e) {
+            Log.e(TAG, task.name + " failed", e);
+        } finally {
+            task.done.countDown();
+        }
+    }
+
+    private static void await(Task task) {
+        try {
+            task.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Task> sort() {
+        ArrayList<Task> ordered = new ArrayList<>(tasks.size());
+        HashSet<String> visited = new HashSet<>();
+        HashSet<String> visiting = new HashSet<>();
+        for (Task task : tasks.values()) {
+            visit(task, ordered, visited, visiting);
+        }
+        return ordered;
+    }
+
+    private void visit(Task task, List<Task> ordered, HashSet<String> visited, HashSet<String> visiting) {
+        if (visited.contains(task.name)) return;
+        if (!visiting.add(task.name)) {
+            throw new IllegalStateException("startup task cycle at " + task.name);
+        }
+        for (String dependency : task.dependencies) {
+            Task next = tasks.get(dependency);
+            if (next == null) {
+                throw new IllegalStateException("startup task " + task.name + " depends on unknown " + dependency);
+            }
+            visit(next, ordered, visited, visiting);
+        }
+        visiting.remove(task.name);
+        visited.add(task.name);
+        ordered.add(task);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
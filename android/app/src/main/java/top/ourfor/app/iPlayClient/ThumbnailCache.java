@@ -0,0 +1,308 @@
+package top.ourfor.app.iPlayClient;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Seek preview frames on disk, one directory per media key with its JPEG sprite sheets and a meta file.
+ * A {@link ThumbnailGenerator} fills the directory of the media being played in the background, sheets are
+ * written as they fill up so previews of the beginning are there early, and an interrupted run continues
+ * with the first missing sheet. Directories are evicted least recently used first once the cache outgrew maxBytes.
+ * The seek bar asks for frames on the main thread, which only crops sheets already in memory into one reused
+ * tile bitmap; metas and sheets are read from disk on a decoder thread.
+ */
+class ThumbnailCache implements ThumbnailGenerator.Sink {
+    private static class Meta {
+        double interval;
+        int tileWidth;
+        int tileHeight;
+        int sheets;
+        boolean complete;
+    }
+
+    private static final String TAG = "ThumbnailCache";
+    private static final double INTERVAL = 10;
+    private static final double CPU_BUDGET = 0.25;
+    private static final int QUALITY = 70;
+    private static ThumbnailCache shared;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "thumbnail");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "thumbnail-decode");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final HashMap<String, Meta> metas = new HashMap<>();
+    // decoded sheets by key and index, a seek bar drag mostly stays within one or two
+    private final LruCache<String, Bitmap> sheets = new LruCache<>(4);
+    private File dir;
+    private long maxBytes;
+    private ThumbnailGenerator generator;
+    // the sheet the decoder was asked for last, older requests not started yet are skipped
+    private String decoding;
+    // main thread only
+    private Bitmap tile;
+    private Canvas canvas;
+    private final Rect source = new Rect();
+    private final Rect target = new Rect();
+
+    static synchronized ThumbnailCache shared() {
+        if (shared == null) {
+            shared = new ThumbnailCache();
+        }
+        return shared;
+    }
+
+    synchronized void setDirectory(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.d(TAG, "create thumbnail dir failed: " + dir.getPath());
+        }
+    }
+
+    // starts generating previews of the media unless they are complete, replaces the generator of the previous media
+    synchronized void generate(String key, String url) {
+        if (dir == null || key == null) return;
+        if (generator != null) {
+            if (generator.key.equals(key) && !generator.isCancelled()) return;
+            generator.cancel();
+            generator = null;
+        }
+        File media = new File(dir, key);
+        media.setLastModified(System.currentTimeMillis());
+        Meta meta = meta(key);
+        if (meta != null && meta.complete) return;
+        int first = meta != null && meta.interval == INTERVAL ? meta.sheets : 0;
+        generator = new ThumbnailGenerator(key, url, INTERVAL, first, CPU_BUDGET, this);
+        executor.execute(generator);
+    }
+
+    synchronized void cancel(String key) {
+        if (generator == null || !generator.key.equals(key)) return;
+        generator.cancel();
+        generator = null;
+    }
+
+    // the preview frame at the given time, called on the main thread; the bitmap is reused by the next call.
+    // null until its sheet is generated and decoded, onReady runs on the decoder thread once a decode it waits for finished
+    Bitmap frame(String key, double seconds, Runnable onReady) {
+        if (key == null || seconds < 0) return null;
+        Meta meta;
+        synchronized (this) {
+            if (dir == null) return null;
+            meta = metas.get(key);
+        }
+        if (meta == null) {
+            load(key, -1, onReady);
+            return null;
+        }
+        int position = (int) (seconds / meta.interval);
+        int index = position / ThumbnailGenerator.TILES;
+        if (index >= meta.sheets) return null;
+        Bitmap sheet = sheets.get(key + "/" + index);
+        if (sheet == null) {
+            load(key, index, onReady);
+            return null;
+        }
+        int cell = position % ThumbnailGenerator.TILES;
+        int x = (cell % ThumbnailGenerator.COLUMNS) * meta.tileWidth;
+        int y = (cell / ThumbnailGenerator.COLUMNS) * meta.tileHeight;
+        if (x + meta.tileWidth > sheet.getWidth() || y + meta.tileHeight > sheet.getHeight()) return null;
+        if (tile == null || tile.getWidth() != meta.tileWidth || tile.getHeight() != meta.tileHeight) {
+            tile = Bitmap.createBitmap(meta.tileWidth, meta.tileHeight, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(tile);
+        }
+        source.set(x, y, x + meta.tileWidth, y + meta.tileHeight);
+        target.set(0, 0, meta.tileWidth, meta.tileHeight);
+        canvas.drawBitmap(sheet, source, target, null);
+        return tile;
+    }
+
+    // reads the meta of the media, and the sheet unless index is -1, on the decoder thread
+    private void load(String key, int index, Runnable onReady) {
+        String name = key + "/" + index;
+        synchronized (this) {
+            if (name.equals(decoding)) return;
+            decoding = name;
+        }
+        decoder.execute(() -> {
+            synchronized (this) {
+                if (!name.equals(decoding)) return;
+            }
+            boolean ready = false;
+            Meta meta = meta(key);
+            File media;
+            synchronized (this) {
+                media = dir != null ? new File(dir, key) : null;
+            }
+            if (meta != null && media != null) {
+                if (index < 0) {
+                    ready = true;
+                } else if (index < meta.sheets) {
+                    Bitmap sheet = BitmapFactory.decodeFile(new File(media, index + ".jpg").getPath());
+                    if (sheet != null) {
+                        sheets.put(name, sheet);
+                        ready = true;
+                    }
+                }
+            }
+            synchronized (this) {
+                if (name.equals(decoding)) decoding = null;
+            }
+            if (ready && onReady != null) onReady.run();
+        });
+    }
+
+    @Override
+    public void onSheet(ThumbnailGenerator generator, ThumbnailGenerator.Sheet sheet) {
+        File media;
+        synchronized (this) {
+            if (dir == null) return;
+            media = new File(dir, generator.key);
+        }
+        if (!media.exists() && !media.mkdirs()) return;
+        Bitmap bitmap = Bitmap.createBitmap(sheet.pixels, sheet.width(), sheet.height(), Bitmap.Config.ARGB_8888);
+        File file = new File(media, sheet.index + ".jpg");
+        File temp = new File(media, sheet.index + ".jpg.tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, QUALITY, out);
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        } finally {
+            bitmap.recycle();
+        }
+        if (!temp.renameTo(file)) return;
+        Meta meta = new Meta();
+        meta.interval = generator.interval;
+        meta.tileWidth = sheet.tileWidth;
+        meta.tileHeight = sheet.tileHeight;
+        meta.sheets = sheet.index + 1;
+        meta.complete = (sheet.index + 1) * ThumbnailGenerator.TILES * generator.interval >= generator.duration;
+        writeMeta(media, meta);
+        synchronized (this) {
+            metas.put(generator.key, meta);
+            sheets.remove(generator.key + "/" + sheet.index);
+        }
+        evict(generator.key);
+    }
+
+    @Override
+    public void onError(ThumbnailGenerator generator, RuntimeException e) {
+        Log.d(TAG, "generate " + generator.key + ": " + e);
+    }
+
+    @Override
+    public void onFinished(ThumbnailGenerator generator, boolean complete) {
+        synchronized (this) {
+            if (this.generator == generator) this.generator = null;
+        }
+        Log.d(TAG, "generator of " + generator.key + " finished, complete: " + complete);
+    }
+
+    // cached meta of the media, read from disk once without holding the lock
+    private Meta meta(String key) {
+        Meta meta;
+        File file;
+        synchronized (this) {
+            meta = metas.get(key);
+            if (meta != null || dir == null) return meta;
+            file = new File(new File(dir, key), "meta");
+        }
+        if (!file.exists()) return null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            // interval, tileWidth, tileHeight, sheets, complete
+            String[] fields = reader.readLine().split("\t");
+            meta = new Meta();
+            meta.interval = Double.parseDouble(fields[0]);
+            meta.tileWidth = Integer.parseInt(fields[1]);
+            meta.tileHeight = Integer.parseInt(fields[2]);
+            meta.sheets = Integer.parseInt(fields[3]);
+            meta.complete = "1".equals(fields[4]);
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, "read meta " + key + ": " + e);
+            return null;
+        }
+        synchronized (this) {
+            Meta current = metas.get(key);
+            if (current != null) return current;
+            metas.put(key, meta);
+        }
+        return meta;
+    }
+
+    private static void writeMeta(File media, Meta meta) {
+        String line = String.format(Locale.ROOT, "%s\t%d\t%d\t%d\t%d\n",
+                meta.interval, meta.tileWidth, meta.tileHeight, meta.sheets, meta.complete ? 1 : 0);
+        File temp = new File(media, "meta.tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.d(TAG, e.toString());
+            return;
+        }
+        if (!temp.renameTo(new File(media, "meta"))) {
+            Log.d(TAG, "replace meta failed: " + media.getPath());
+        }
+    }
+
+    // drops the least recently used media directories beyond maxBytes, never the one being generated
+    private void evict(String current) {
+        File[] medias;
+        long limit;
+        synchronized (this) {
+            if (dir == null) return;
+            medias = dir.listFiles(File::isDirectory);
+            limit = maxBytes;
+        }
+        if (medias == null || limit <= 0) return;
+        long total = 0;
+        long[] sizes = new long[medias.length];
+        for (int i = 0; i < medias.length; i++) {
+            File[] files = medias[i].listFiles();
+            if (files == null) continue;
+            for (File file : files) sizes[i] += file.length();
+            total += sizes[i];
+        }
+        if (total <= limit) return;
+        Integer[] order = new Integer[medias.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(medias[a].lastModified(), medias[b].lastModified()));
+        for (int i : order) {
+            if (total <= limit) break;
+            String key = medias[i].getName();
+            if (key.equals(current)) continue;
+            File[] files = medias[i].listFiles();
+            if (files != null) {
+                for (File file : files) file.delete();
+            }
+            medias[i].delete();
+            total -= sizes[i];
+            synchronized (this) {
+                metas.remove(key);
+            }
+            Log.d(TAG, "evicted " + key);
+        }
+    }
+}
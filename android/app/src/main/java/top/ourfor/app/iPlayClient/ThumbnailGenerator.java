@@ -0,0 +1,204 @@
+package top.ourfor.app.iPlayClient;
+
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_END_FILE;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_PLAYBACK_RESTART;
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_SHUTDOWN;
+
+import java.util.Map;
+
+import top.ourfor.lib.mpv.MPV;
+
+/**
+ * Extracts preview frames of one media with a headless mpv: no video or audio output, software decoding
+ * on a single thread and a scale filter so frames come out at tile size. Every interval seconds it seeks
+ * by keyframe, grabs the frame with screenshot-raw and packs it into a sprite sheet of COLUMNS x ROWS tiles.
+ * The mpv handle is created on the generator thread, which runs at the lowest priority so mpv's threads
+ * inherit it, and the generator sleeps between frames to stay within its share of one core.
+ * Nothing but {@link MPV} ties it to Android, errors go to the sink instead of the log. With mpv and the player
+ * library built for the host it runs on a desktop JVM against local files, see ThumbnailGeneratorTest.
+ */
+class ThumbnailGenerator implements Runnable {
+    interface Sink {
+        // a full sheet, or the last one with fewer tiles, called on the generator thread
+        void onSheet(ThumbnailGenerator generator, Sheet sheet);
+
+        // called once at the end, complete is false when the generator was cancelled or failed
+        void onFinished(ThumbnailGenerator generator, boolean complete);
+
+        // the reason a generator failed, before onFinished
+        default void onError(ThumbnailGenerator generator, RuntimeException e) {}
+    }
+
+    static class Sheet {
+        final int index;
+        final int tileWidth;
+        final int tileHeight;
+        // ARGB, COLUMNS * tileWidth wide
+        final int[] pixels;
+        int tiles;
+
+        Sheet(int index, int tileWidth, int tileHeight) {
+            this.index = index;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.pixels = new int[COLUMNS * tileWidth * ROWS * tileHeight];
+        }
+
+        int width() {
+            return COLUMNS * tileWidth;
+        }
+
+        int height() {
+            return ROWS * tileHeight;
+        }
+
+        // copies a bgr0 frame into the tile, cropped or padded to the tile size
+        void put(int tile, byte[] data, int width, int height, int stride) {
+            int x0 = (tile % COLUMNS) * tileWidth;
+            int y0 = (tile / COLUMNS) * tileHeight;
+            int rows = Math.min(height, tileHeight);
+            int columns = Math.min(width, tileWidth);
+            for (int y = 0; y < rows; y++) {
+                int source = y * stride;
+                int target = (y0 + y) * width() + x0;
+                for (int x = 0; x < columns; x++) {
+                    int offset = source + x * 4;
+                    pixels[target + x] = 0xff000000 |
+                            (data[offset + 2] & 0xff) << 16 |
+                            (data[offset + 1] & 0xff) << 8 |
+                            (data[offset] & 0xff);
+                }
+            }
+        }
+    }
+
+    static final int COLUMNS = 5;
+    static final int ROWS = 5;
+    static final int TILES = COLUMNS * ROWS;
+    static final int TILE_WIDTH = 160;
+    private static final double EVENT_TIMEOUT = 10;
+
+    final String key;
+    final String url;
+    final double interval;
+    private final int firstSheet;
+    private final double budget;
+    private final Sink sink;
+    private volatile boolean cancelled;
+    double duration;
+
+    // budget is the share of one core to use, firstSheet skips sheets generated before
+    ThumbnailGenerator(String key, String url, double interval, int firstSheet, double budget, Sink sink) {
+        this.key = key;
+        this.url = url;
+        this.interval = interval;
+        this.firstSheet = firstSheet;
+        this.budget = budget;
+        this.sink = sink;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void run() {
+        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+        boolean complete = false;
+        MPV mpv = new MPV();
+        try {
+            mpv.create();
+            mpv.setOptionString("config", "no");
+            mpv.setOptionString("vo", "null");
+            mpv.setOptionString("ao", "null");
+            mpv.setOptionString("aid", "no");
+            mpv.setOptionString("sid", "no");
+            mpv.setOptionString("hwdec", "no");
+            mpv.setOptionString("vd-lavc-threads", "1");
+            mpv.setOptionString("vd-lavc-skiploopfilter", "all");
+            mpv.setOptionString("vd-lavc-fast", "yes");
+            mpv.setOptionString("vf", "scale=w=" + TILE_WIDTH + ":h=-2");
+            mpv.setOptionString("hr-seek", "no");
+            mpv.setOptionString("cache", "no");
+            mpv.setOptionString("demuxer-max-bytes", String.valueOf(4 * 1024 * 1024));
+            mpv.setOptionString("pause", "yes");
+            mpv.setOptionString("keep-open", "always");
+            mpv.init();
+            mpv.command("loadfile", url);
+            // the first frame after loading
+            if (!await(mpv)) return;
+            duration = mpv.getDoubleProperty("duration");
+            if (duration <= 0) return;
+            complete = generate(mpv);
+        } catch (RuntimeException e) {
+            sink.onError(this, e);
+        } finally {
+            mpv.destroy();
+            sink.onFinished(this, complete);
+        }
+    }
+
+    private boolean generate(MPV mpv) {
+        int total = (int) Math.ceil(duration / interval);
+        Sheet sheet = null;
+        for (int i = firstSheet * TILES; i < total; i++) {
+            if (cancelled) return false;
+            long start = System.nanoTime();
+            mpv.command("seek", String.valueOf(i * interval), "absolute+keyframes");
+            if (!await(mpv)) return false;
+            Object node = mpv.commandNode("screenshot-raw", "video");
+            if (node instanceof Map) {
+                Map<?, ?> frame = (Map<?, ?>) node;
+                Object data = frame.get("data");
+                int width = intValue(frame.get("w"));
+                int height = intValue(frame.get("h"));
+                int stride = intValue(frame.get("stride"));
+                if (data instanceof byte[] && width > 0 && height > 0) {
+                    if (sheet == null) sheet = new Sheet(i / TILES, TILE_WIDTH, height);
+                    sheet.put(i % TILES, (byte[]) data, width, height, stride);
+                }
+            }
+            // a tile without frame stays black
+            if (sheet != null && (i % TILES == TILES - 1 || i == total - 1)) {
+                sheet.tiles = i % TILES + 1;
+                sink.onSheet(this, sheet);
+                sheet = null;
+            }
+            throttle(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    // waits for the seek or load to produce a frame, false when the file ended or failed
+    private boolean await(MPV mpv) {
+        MPV.Event event = new MPV.Event();
+        long deadline = System.nanoTime() + (long) (EVENT_TIMEOUT * 1e9);
+        // short waits so a cancelled generator stops soon
+        while (!cancelled && System.nanoTime() < deadline) {
+            if (!mpv.waitEvent(event, 0.5)) return false;
+            if (event.type == MPV_EVENT_PLAYBACK_RESTART) return true;
+            if (event.type == MPV_EVENT_END_FILE || event.type == MPV_EVENT_SHUTDOWN) return false;
+        }
+        return false;
+    }
+
+    // sleeps so the time spent per frame stays within the budget
+    private void throttle(long elapsed) {
+        if (budget <= 0 || budget >= 1) return;
+        long pause = (long) (elapsed / 1e6 * (1 - budget) / budget);
+        try {
+            Thread.sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+        }
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
@@ -0,0 +1,173 @@
+package top.ourfor.lib.mpv;
+
+import static top.ourfor.lib.mpv.MPV.MPV_EVENT_SHUTDOWN;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One thread servicing the event queues of every registered mpv handle.
+ * mpv's wakeup callback marks a handle as ready, the thread then drains it without blocking
+ * and hands each event to the handler registered with it.
+ * A handle is closed on this thread, either after MPV_EVENT_SHUTDOWN or when it is unregistered,
+ * so no drain can race with mpv_terminate_destroy.
+ * A handler throwing is logged and does not stop the thread for the other handles,
+ * one that keeps throwing is unregistered.
+ */
+public class EventDispatcher {
+    public interface Handler {
+        // every event drained from the handle, the instance is reused for the next event
+        void onEvent(MPV.Event event);
+
+        // after a burst of events and whenever the timeout from nextTimeout elapsed
+        default void onIdle() {}
+
+        // seconds until the handler wants onIdle without new events, -1 for never
+        default double nextTimeout() { return -1; }
+
+        // the handle is no longer serviced and can be destroyed
+        default void onClosed() {}
+    }
+
+    private static class Session {
+        final long id;
+        final MPV mpv;
+        final Handler handler;
+        volatile boolean closing;
+        // consecutive handler calls that threw
+        int failures;
+
+        Session(long id, MPV mpv, Handler handler) {
+            this.id = id;
+            this.mpv = mpv;
+            this.handler = handler;
+        }
+    }
+
+    private static final String TAG = "EventDispatcher";
+    private static final int EVENT_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_FAILURES = 8;
+    private static EventDispatcher shared;
+
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MPV, Session> handles = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final MPV.EventBuffer events = new MPV.EventBuffer(EVENT_BUFFER_SIZE);
+    private final MPV.Event event = new MPV.Event();
+    private final long[] woken = new long[16];
+    private final Thread thread;
+
+    public static synchronized EventDispatcher shared() {
+        if (shared == null) {
+            shared = new EventDispatcher();
+        }
+        return shared;
+    }
+
+    private EventDispatcher() {
+        thread = new Thread(this::loop, "mpv-events");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void register(MPV mpv, Handler handler) {
+        Session session = new Session(nextId.getAndIncrement(), mpv, handler);
+        sessions.put(session.id, session);
+        handles.put(mpv, session);
+        mpv.setWakeupId(session.id);
+        // events queued before the callback was set do not trigger a wakeup
+        MPV.wakeup(session.id);
+    }
+
+    // closes the handle on the dispatcher thread, Handler.onClosed is called once it is no longer serviced
+    public void unregister(MPV mpv) {
+        Session session = handles.get(mpv);
+        if (session == null) return;
+        session.closing = true;
+        MPV.wakeup(session.id);
+    }
+
+    private void loop() {
+        while (true) {
+            int count = MPV.awaitWakeup(woken, nextTimeout());
+            for (int i = 0; i < count; i++) {
+                Session session = sessions.get(woken[i]);
+                if (session == null) continue;
+                if (session.closing || !drain(session)) {
+                    close(session);
+                }
+            }
+            for (Session session : sessions.values()) {
+                idle(session);
+            }
+        }
+    }
+
+    // returns false once the handle shut down or was released
+    private boolean drain(Session session) {
+        while (true) {
+            int count = session.mpv.drainEvents(events, 0);
+            if (count < 0) return false;
+            if (count == 0) return true;
+            while (events.next(event)) {
+                if (event.type == MPV_EVENT_SHUTDOWN) return false;
+                try {
+                    session.handler.onEvent(event);
+                    session.failures = 0;
+                } catch (Exception e) {
+                    failed(session, "onEvent", e);
+                    if (session.closing) return false;
+                }
+            }
+        }
+    }
+
+    private void close(Session session) {
+        Log.d(TAG, "close mpv handle " + session.id);
+        sessions.remove(session.id);
+        handles.remove(session.mpv);
+        session.mpv.setWakeupId(0);
+        idle(session);
+        try {
+            session.handler.onClosed();
+        } catch (Exception e) {
+            Log.e(TAG, "onClosed of mpv handle " + session.id + " threw", e);
+        }
+    }
+
+    private void idle(Session session) {
+        try {
+            session.handler.onIdle();
+        } catch (Exception e) {
+            failed(session, "onIdle", e);
+        }
+    }
+
+    // the handle is closed on the next pass once its handler threw MAX_FAILURES times in a row
+    private void failed(Session session, String callback, Exception e) {
+        session.failures++;
+        Log.e(TAG, callback + " of mpv handle " + session.id + " threw, " + session.failures + " in a row", e);
+        if (session.failures < MAX_FAILURES || session.closing) return;
+        Log.e(TAG, "unregister mpv handle " + session.id + " after repeated failures");
+        session.closing = true;
+        MPV.wakeup(session.id);
+    }
+
+    private double nextTimeout() {
+        double timeout = -1;
+        for (Session session : sessions.values()) {
+            double next;
+            try {
+                next = session.handler.nextTimeout();
+            } catch (Exception e) {
+                failed(session, "nextTimeout", e);
+                continue;
+            }
+            if (next < 0) continue;
+            timeout = timeout < 0 ? next : Math.min(timeout, next);
+        }
+        return timeout;
+    }
+}
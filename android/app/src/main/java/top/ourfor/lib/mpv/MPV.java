@@ -1,11 +1,27 @@
 package top.ourfor.lib.mpv;
 
+import android.os.Build;
 import android.view.Surface;
 
+import androidx.annotation.RequiresApi;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 
 public class MPV {
     // native mpv c pointer
     private long holder;
+    // reply_userdata of async requests, kept above the ids used to observe properties
+    private final AtomicLong nextRequestId = new AtomicLong(1L << 32);
+    private final ConcurrentHashMap<Long, CompletableFuture<Object>> requests = new ConcurrentHashMap<>();
 
     static {
         String[] libs = {"mpv", "player"};
@@ -26,6 +42,8 @@ public class MPV {
     public native void setDrawable(Surface surface);
 
     public native void command(String... cmd);
+    // runs the command synchronously and returns its result like getNodeProperty, null on error or without result
+    public native Object commandNode(String... cmd);
 
     public native int setOptionString(String name, String value);
     public native boolean getBoolProperty(String key);
@@ -35,46 +53,302 @@ public class MPV {
     public native double getDoubleProperty(String key);
     public native String getStringProperty(String key);
     public native int setDoubleProperty(String key, double value);
+    // String, Boolean, Long, Double, byte[], List<Object> or Map<String, Object>, null when the property is unavailable
+    public native Object getNodeProperty(String key);
 
     public native int setStringProperty(String key, String value);
 
     public native int observeProperty(long reply_userdata, String name, int format);
-    public native Event waitEvent(double timeout);
 
+    public native int commandAsync(long reply_userdata, String... cmd);
+    public native int setPropertyAsync(long reply_userdata, String key, String value);
+    public native int getPropertyAsync(long reply_userdata, String key, int format);
+    public static native String errorString(int error);
+
+    // level requested by handles created afterwards (no, fatal, error, warn, info, v, debug, trace), defaults to warn,
+    // per module levels go through the msg-level property, e.g. setStringProperty("msg-level", "all=warn,ffmpeg=error")
+    public static native void setDefaultLogLevel(String level);
+    public native int setLogLevel(String level);
+    // log messages are kept in a native ring buffer, the writer appends them to mpv.N.log files in dir
+    public static native void startLogWriter(String dir, long maxBytes, int maxFiles);
+    // formatted log lines of the last seconds, meant to be attached to error reports
+    public static native String recentLogs(double seconds);
+
+    // routes mpv's wakeup callback into the queue read by awaitWakeup, 0 removes the callback
+    public native void setWakeupId(long id);
+    public static native void wakeup(long id);
+    // blocks until a handle has new events or timeout elapsed (< 0 waits forever), fills ids and returns their count
+    public static native int awaitWakeup(long[] ids, double timeout);
+
+    // completed with null once MPV_EVENT_COMMAND_REPLY arrives on the event loop
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public CompletableFuture<Object> commandAsync(String... cmd) {
+        long id = nextRequestId.getAndIncrement();
+        return submit(id, commandAsync(id, cmd));
+    }
+
+    // the value is converted by mpv like setStringProperty, completed on MPV_EVENT_SET_PROPERTY_REPLY
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public CompletableFuture<Object> setPropertyAsync(String key, String value) {
+        long id = nextRequestId.getAndIncrement();
+        return submit(id, setPropertyAsync(id, key, value));
+    }
+
+    // completed with the value described by Event.value() on MPV_EVENT_GET_PROPERTY_REPLY
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public CompletableFuture<Object> getPropertyAsync(String key, int format) {
+        long id = nextRequestId.getAndIncrement();
+        return submit(id, getPropertyAsync(id, key, format));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private CompletableFuture<Object> submit(long id, int state) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (state < 0) {
+            future.completeExceptionally(new IllegalStateException(errorString(state)));
+            return future;
+        }
+        requests.put(id, future);
+        return future;
+    }
+
+    // called by the event loop for every event, returns true when the event was the reply of an async request
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public boolean completeRequest(Event event) {
+        if (event.type != MPV_EVENT_COMMAND_REPLY &&
+            event.type != MPV_EVENT_SET_PROPERTY_REPLY &&
+            event.type != MPV_EVENT_GET_PROPERTY_REPLY) {
+            return false;
+        }
+        CompletableFuture<Object> future = requests.remove(event.replyUserdata);
+        if (future == null) return true;
+        if (event.error < 0) {
+            future.completeExceptionally(new IllegalStateException(errorString(event.error)));
+        } else {
+            future.complete(event.value());
+        }
+        return true;
+    }
+
+    // fails every request still waiting for a reply, used when the event loop stops
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    public void cancelRequests() {
+        for (Long id : requests.keySet()) {
+            CompletableFuture<Object> future = requests.remove(id);
+            if (future != null) future.cancel(false);
+        }
+    }
+    // fills the given event in place, so a loop can reuse one instance for every event
+    public native boolean waitEvent(Event event, double timeout);
+
+    public Event waitEvent(double timeout) {
+        Event event = new Event();
+        return waitEvent(event, timeout) ? event : null;
+    }
+
+    // waits up to timeout for the first event, then copies every queued event into the direct buffer,
+    // returns the number of records written, -1 when mpv is released or, when the next record is larger
+    // than the whole buffer, minus its size, the record stays queued until a call with a large enough buffer
+    public native int drainEvents(ByteBuffer direct, double timeout);
+
+    public static native String propertyName(int id);
+
+    public int drainEvents(EventBuffer events, double timeout) {
+        int count = drainEvents(events.buffer, timeout);
+        while (count < -1) {
+            events.grow(-count);
+            count = drainEvents(events.buffer, 0);
+        }
+        events.reset(Math.max(count, 0));
+        return count;
+    }
 
-    public class Event {
+
+    public static class Event {
         public int type;
+        public long replyUserdata;
+        public int error;
         public String prop;
         public int format;
+        // property value delivered with MPV_EVENT_PROPERTY_CHANGE, only the field matching format is set
+        public boolean flag;
+        public long int64;
+        public double doubleValue;
+        public String string;
+        // MPV_FORMAT_NODE: String, Boolean, Long, Double, byte[], List<Object> or Map<String, Object>
+        public Object node;
+
+        public Object value() {
+            if (format == MPV_FORMAT_FLAG) return flag;
+            if (format == MPV_FORMAT_INT64) return int64;
+            if (format == MPV_FORMAT_DOUBLE) return doubleValue;
+            if (format == MPV_FORMAT_STRING || format == MPV_FORMAT_OSD_STRING) return string;
+            if (format == MPV_FORMAT_NODE) return node;
+            return null;
+        }
     }
 
-    public static int MPV_FORMAT_NONE             = 0;
-    public static int MPV_FORMAT_STRING           = 1;
-    public static int MPV_FORMAT_OSD_STRING       = 2;
-    public static int MPV_FORMAT_FLAG             = 3;
-    public static int MPV_FORMAT_INT64            = 4;
-    public static int MPV_FORMAT_DOUBLE           = 5;
-    public static int MPV_FORMAT_NODE             = 6;
-    public static int MPV_FORMAT_NODE_ARRAY       = 7;
-    public static int MPV_FORMAT_NODE_MAP         = 8;
-    public static int MPV_FORMAT_BYTE_ARRAY       = 9;
-
-    public static int MPV_EVENT_NONE              = 0;
-    public static int  MPV_EVENT_SHUTDOWN          = 1;
-    public static int MPV_EVENT_LOG_MESSAGE       = 2;
-    public static int MPV_EVENT_GET_PROPERTY_REPLY = 3;
-    public static int MPV_EVENT_SET_PROPERTY_REPLY = 4;
-    public static int MPV_EVENT_COMMAND_REPLY     = 5;
-    public static int MPV_EVENT_START_FILE        = 6;
-    public static int MPV_EVENT_END_FILE          = 7;
-    public static int MPV_EVENT_FILE_LOADED       = 8;
-    public static int MPV_EVENT_TICK              = 14;
-    public static int MPV_EVENT_CLIENT_MESSAGE    = 16;
-    public static int MPV_EVENT_VIDEO_RECONFIG    = 17;
-    public static int MPV_EVENT_AUDIO_RECONFIG    = 18;
-    public static int MPV_EVENT_SEEK              = 20;
-    public static int MPV_EVENT_PLAYBACK_RESTART  = 21;
-    public static int MPV_EVENT_PROPERTY_CHANGE   = 22;
-    public static int MPV_EVENT_QUEUE_OVERFLOW    = 24;
-    public static int MPV_EVENT_HOOK              = 25;
+    /**
+     * Caller-owned direct buffer for {@link #drainEvents(EventBuffer, double)}, decodes the records
+     * written by native code into a reusable {@link Event} without allocating for flag, int64 and double values.
+     * Node values come encoded in the record and are decoded into {@link Event#node}, the buffer grows
+     * for one larger than its capacity.
+     */
+    public static class EventBuffer {
+        static final int HEADER_SIZE = 40;
+
+        ByteBuffer buffer;
+        // property names by id, asked from native code once per id
+        String[] names = new String[32];
+        private int remaining;
+        private int offset;
+        // read position inside an encoded node
+        private int cursor;
+
+        public EventBuffer(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+        void grow(int size) {
+            int capacity = buffer.capacity();
+            while (capacity < size) capacity *= 2;
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+        void reset(int count) {
+            remaining = count;
+            offset = 0;
+        }
+
+        public boolean next(Event event) {
+            if (remaining == 0) return false;
+            remaining--;
+            event.type = buffer.getInt(offset);
+            event.format = buffer.getInt(offset + 4);
+            event.replyUserdata = buffer.getLong(offset + 8);
+            int propId = buffer.getInt(offset + 16);
+            int length = buffer.getInt(offset + 20);
+            long value = buffer.getLong(offset + 24);
+            event.error = buffer.getInt(offset + 32);
+            event.prop = propId < 0 ? null : name(propId);
+            event.string = null;
+            event.node = null;
+            if (event.format == MPV_FORMAT_FLAG) {
+                event.flag = value != 0;
+            } else if (event.format == MPV_FORMAT_INT64) {
+                event.int64 = value;
+            } else if (event.format == MPV_FORMAT_DOUBLE) {
+                event.doubleValue = Double.longBitsToDouble(value);
+            } else if (event.format == MPV_FORMAT_NODE && length > 0) {
+                cursor = offset + HEADER_SIZE;
+                event.node = node();
+            } else if (length > 0) {
+                event.string = string(offset + HEADER_SIZE, length);
+            }
+            offset += HEADER_SIZE + ((length + 7) & ~7);
+            return true;
+        }
+
+        // the value encoded at cursor, converted like getNodeProperty
+        private Object node() {
+            int format = buffer.get(cursor++);
+            switch (format) {
+                case MPV_FORMAT_STRING:
+                case MPV_FORMAT_OSD_STRING:
+                    return text();
+                case MPV_FORMAT_FLAG:
+                    return buffer.get(cursor++) != 0;
+                case MPV_FORMAT_INT64:
+                    cursor += 8;
+                    return buffer.getLong(cursor - 8);
+                case MPV_FORMAT_DOUBLE:
+                    cursor += 8;
+                    return buffer.getDouble(cursor - 8);
+                case MPV_FORMAT_NODE_ARRAY: {
+                    int count = buffer.getInt(cursor);
+                    cursor += 4;
+                    ArrayList<Object> list = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) list.add(node());
+                    return list;
+                }
+                case MPV_FORMAT_NODE_MAP: {
+                    int count = buffer.getInt(cursor);
+                    cursor += 4;
+                    HashMap<String, Object> map = new HashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        String key = text();
+                        map.put(key, node());
+                    }
+                    return map;
+                }
+                case MPV_FORMAT_BYTE_ARRAY: {
+                    int length = buffer.getInt(cursor);
+                    byte[] bytes = new byte[length];
+                    for (int i = 0; i < length; i++) {
+                        bytes[i] = buffer.get(cursor + 4 + i);
+                    }
+                    cursor += 4 + length;
+                    return bytes;
+                }
+                default:
+                    return null;
+            }
+        }
+
+        private String text() {
+            int length = buffer.getInt(cursor);
+            cursor += 4 + length;
+            return string(cursor - length, length);
+        }
+
+        private String string(int at, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(at + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String name(int id) {
+            if (id >= names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, id + 1));
+            }
+            String name = names[id];
+            if (name == null) {
+                name = propertyName(id);
+                names[id] = name;
+            }
+            return name;
+        }
+    }
+
+    public static final int MPV_FORMAT_NONE             = 0;
+    public static final int MPV_FORMAT_STRING           = 1;
+    public static final int MPV_FORMAT_OSD_STRING       = 2;
+    public static final int MPV_FORMAT_FLAG             = 3;
+    public static final int MPV_FORMAT_INT64            = 4;
+    public static final int MPV_FORMAT_DOUBLE           = 5;
+    public static final int MPV_FORMAT_NODE             = 6;
+    public static final int MPV_FORMAT_NODE_ARRAY       = 7;
+    public static final int MPV_FORMAT_NODE_MAP         = 8;
+    public static final int MPV_FORMAT_BYTE_ARRAY       = 9;
+
+    public static final int MPV_EVENT_NONE              = 0;
+    public static final int  MPV_EVENT_SHUTDOWN          = 1;
+    public static final int MPV_EVENT_LOG_MESSAGE       = 2;
+    public static final int MPV_EVENT_GET_PROPERTY_REPLY = 3;
+    public static final int MPV_EVENT_SET_PROPERTY_REPLY = 4;
+    public static final int MPV_EVENT_COMMAND_REPLY     = 5;
+    public static final int MPV_EVENT_START_FILE        = 6;
+    public static final int MPV_EVENT_END_FILE          = 7;
+    public static final int MPV_EVENT_FILE_LOADED       = 8;
+    public static final int MPV_EVENT_TICK              = 14;
+    public static final int MPV_EVENT_CLIENT_MESSAGE    = 16;
+    public static final int MPV_EVENT_VIDEO_RECONFIG    = 17;
+    public static final int MPV_EVENT_AUDIO_RECONFIG    = 18;
+    public static final int MPV_EVENT_SEEK              = 20;
+    public static final int MPV_EVENT_PLAYBACK_RESTART  = 21;
+    public static final int MPV_EVENT_PROPERTY_CHANGE   = 22;
+    public static final int MPV_EVENT_QUEUE_OVERFLOW    = 24;
+    public static final int MPV_EVENT_HOOK              = 25;
 }
@@ -1,12 +1,29 @@
 package top.ourfor.lib.mpv;
 
+import java.util.Map;
+
 public class TrackItem {
     public String lang;
     public String type;
     public String title;
+    public String codec;
+    public boolean selected;
     public int id;
 
     public static String VideoTrackName = "video";
     public static String AudioTrackName = "audio";
     public static String SubtitleTrackName = "sub";
+
+    // one entry of the track-list node
+    public static TrackItem fromNode(Map<String, Object> node) {
+        TrackItem item = new TrackItem();
+        Object id = node.get("id");
+        item.id = id instanceof Long ? ((Long) id).intValue() : 0;
+        item.type = (String) node.get("type");
+        item.lang = (String) node.get("lang");
+        item.title = (String) node.get("title");
+        item.codec = (String) node.get("codec");
+        item.selected = Boolean.TRUE.equals(node.get("selected"));
+        return item;
+    }
 }
@@ -0,0 +1,235 @@
+package top.ourfor.app.iPlayClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fonts are assembled in memory with just the tables the parser reads.
+ * parsesCorpus also runs every font of a directory and prints the time per file:
+ * ./gradlew :app:testDebugUnitTest -PfontCorpus=/usr/share/fonts
+ */
+public class FontNameParserTest {
+    private static final int WINDOWS = 3;
+    private static final int MAC = 1;
+    private static final int EN_US = 0x409;
+    private static final int DE_DE = 0x407;
+
+    private static class Name {
+        final int platform;
+        final int language;
+        final int id;
+        final String value;
+
+        Name(int platform, int language, int id, String value) {
+            this.platform = platform;
+            this.language = language;
+            this.id = id;
+            this.value = value;
+        }
+
+        byte[] bytes() {
+            return value.getBytes(platform == WINDOWS ? StandardCharsets.UTF_16BE : StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static Name windows(int id, String value) {
+        return new Name(WINDOWS, EN_US, id, value);
+    }
+
+    // an sfnt at base inside the file with a name table and, when weight > 0, an OS/2 table
+    private static byte[] font(int base, int weight, int fsSelection, Name... names) {
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        ByteBuffer name = ByteBuffer.allocate(6 + names.length * 12);
+        name.putShort((short) 0).putShort((short) names.length).putShort((short) (6 + names.length * 12));
+        for (Name record : names) {
+            byte[] bytes = record.bytes();
+            name.putShort((short) record.platform).putShort((short) (record.platform == WINDOWS ? 1 : 0))
+                    .putShort((short) record.language).putShort((short) record.id)
+                    .putShort((short) bytes.length).putShort((short) strings.size());
+            strings.write(bytes, 0, bytes.length);
+        }
+        byte[] nameTable = concat(name.array(), strings.toByteArray());
+
+        byte[] os2 = null;
+        if (weight > 0) {
+            // every field the parser should not read is set, so a wrong offset shows
+            os2 = new byte[96];
+            Arrays.fill(os2, (byte) 0xff);
+            ByteBuffer.wrap(os2).putShort(4, (short) weight).putShort(62, (short) fsSelection);
+        }
+
+        int tables = os2 != null ? 2 : 1;
+        int directory = 12 + tables * 16;
+        ByteBuffer header = ByteBuffer.allocate(directory);
+        header.putInt(0x00010000).putShort((short) tables).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+        header.putInt(0x6e616d65).putInt(0).putInt(base + directory).putInt(nameTable.length);
+        if (os2 != null) {
+            header.putInt(0x4f532f32).putInt(0).putInt(base + directory + nameTable.length).putInt(os2.length);
+        }
+        return os2 != null ? concat(header.array(), nameTable, os2) : concat(header.array(), nameTable);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+
+    private static List<FontNameParser.Face> parse(byte[] bytes) {
+        return FontNameParser.parse(ByteBuffer.wrap(bytes));
+    }
+
+    @Test
+    public void readsFamilyStyleAndWeight() {
+        List<FontNameParser.Face> faces = parse(font(0, 700, 0x20,
+                windows(1, "Noto Sans"), windows(2, "Bold")));
+        assertEquals(1, faces.size());
+        FontNameParser.Face face = faces.get(0);
+        assertEquals(0, face.index);
+        assertEquals("Noto Sans", face.family);
+        assertEquals("Bold", face.style);
+        assertEquals(700, face.weight);
+        assertFalse(face.italic);
+    }
+
+    @Test
+    public void readsItalicFromFsSelectionAt62() {
+        FontNameParser.Face italic = parse(font(0, 400, 0x01, windows(1, "Serif"), windows(2, "Italic"))).get(0);
+        assertTrue(italic.italic);
+        assertEquals(400, italic.weight);
+        // REGULAR, bit 6, is not italic
+        FontNameParser.Face regular = parse(font(0, 400, 0x40, windows(1, "Serif"), windows(2, "Italic"))).get(0);
+        assertFalse(regular.italic);
+    }
+
+    @Test
+    public void guessesWeightFromStyleWithoutOs2() {
+        FontNameParser.Face face = parse(font(0, 0, 0, windows(1, "Mono"), windows(2, "Bold Oblique"))).get(0);
+        assertEquals(700, face.weight);
+        assertTrue(face.italic);
+    }
+
+    @Test
+    public void prefersWindowsEnglishOverOtherLanguagesAndMac() {
+        FontNameParser.Face face = parse(font(0, 400, 0,
+                new Name(MAC, 0, 1, "Mac Family"),
+                new Name(WINDOWS, DE_DE, 1, "Deutsch"),
+                windows(1, "English"),
+                new Name(MAC, 0, 2, "Mac Style"))).get(0);
+        assertEquals("English", face.family);
+        assertEquals("Mac Style", face.style);
+
+        face = parse(font(0, 400, 0,
+                new Name(MAC, 0, 1, "Mac Family"),
+                new Name(WINDOWS, DE_DE, 1, "Deutsch"))).get(0);
+        assertEquals("Deutsch", face.family);
+
+        face = parse(font(0, 400, 0, new Name(MAC, 0, 1, "Mac Family"))).get(0);
+        assertEquals("Mac Family", face.family);
+    }
+
+    @Test
+    public void prefersTypographicFamily() {
+        FontNameParser.Face face = parse(font(0, 300, 0,
+                windows(1, "Source Sans Light"), windows(2, "Regular"),
+                windows(16, "Source Sans"), windows(17, "Light"))).get(0);
+        assertEquals("Source Sans", face.family);
+        assertEquals("Light", face.style);
+    }
+
+    @Test
+    public void readsEveryFaceOfACollection() {
+        int header = 12 + 2 * 4;
+        byte[] first = font(header, 400, 0, windows(1, "Sans"), windows(2, "Regular"));
+        byte[] second = font(header + first.length, 700, 0, windows(1, "Sans"), windows(2, "Bold"));
+        ByteBuffer ttc = ByteBuffer.allocate(header);
+        ttc.putInt(0x74746366).putInt(0x00010000).putInt(2).putInt(header).putInt(header + first.length);
+        List<FontNameParser.Face> faces = parse(concat(ttc.array(), first, second));
+        assertEquals(2, faces.size());
+        assertEquals(0, faces.get(0).index);
+        assertEquals("Regular", faces.get(0).style);
+        assertEquals(1, faces.get(1).index);
+        assertEquals("Bold", faces.get(1).style);
+        assertEquals(700, faces.get(1).weight);
+    }
+
+    @Test
+    public void keepsTheFacesReadBeforeACorruptOne() {
+        int header = 12 + 2 * 4;
+        byte[] first = font(header, 400, 0, windows(1, "Sans"));
+        ByteBuffer ttc = ByteBuffer.allocate(header);
+        // the second offset points past the end of the file
+        ttc.putInt(0x74746366).putInt(0x00010000).putInt(2).putInt(header).putInt(1 << 30);
+        List<FontNameParser.Face> faces = parse(concat(ttc.array(), first));
+        assertEquals(1, faces.size());
+        assertEquals("Sans", faces.get(0).family);
+    }
+
+    @Test
+    public void survivesEveryTruncation() {
+        byte[] bytes = font(0, 400, 0, windows(1, "Sans"), windows(2, "Regular"), windows(16, "Sans Typo"));
+        for (int length = 0; length < bytes.length; length++) {
+            List<FontNameParser.Face> faces = parse(Arrays.copyOf(bytes, length));
+            assertNotNull(faces);
+            assertTrue(faces.size() <= 1);
+        }
+    }
+
+    @Test
+    public void ignoresCorruptTables() {
+        byte[] bytes = font(0, 400, 0, windows(1, "Sans"));
+        // name table offset far outside the file
+        ByteBuffer.wrap(bytes).putInt(12 + 8, 1 << 30);
+        assertTrue(parse(bytes).isEmpty());
+
+        // a string running past the end of the file
+        bytes = font(0, 0, 0, windows(1, "Sans"));
+        ByteBuffer.wrap(bytes).putShort(12 + 16 + 6 + 10, (short) 0x7fff);
+        assertTrue(parse(bytes).isEmpty());
+
+        assertTrue(parse(new byte[0]).isEmpty());
+        assertTrue(parse("not a font at all".getBytes(StandardCharsets.US_ASCII)).isEmpty());
+    }
+
+    @Test
+    public void parsesCorpus() throws IOException {
+        String corpus = System.getProperty("fonts.corpus");
+        assumeTrue("no corpus, pass -PfontCorpus", corpus != null && new File(corpus).isDirectory());
+        ArrayList<File> files = new ArrayList<>();
+        collect(new File(corpus), files);
+        assumeTrue(!files.isEmpty());
+        int named = 0;
+        long start = System.nanoTime();
+        for (File file : files) {
+            List<FontNameParser.Face> faces = FontNameParser.parse(file);
+            if (!faces.isEmpty() && !faces.get(0).family.isEmpty()) named++;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("parsed %d fonts, %d named, %.1f us per file%n", files.size(), named, elapsed / 1e3 / files.size());
+        assertEquals(files.size(), named);
+    }
+
+    private static void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            String name = child.getName().toLowerCase();
+            if (child.isDirectory()) collect(child, files);
+            else if (name.endsWith(".ttf") || name.endsWith(".otf") || name.endsWith(".ttc")) files.add(child);
+        }
+    }
+}
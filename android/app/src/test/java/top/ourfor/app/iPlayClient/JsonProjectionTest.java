@@ -0,0 +1,168 @@
+package top.ourfor.app.iPlayClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * benchmarksRecordedResponse projects a response in the shape of emby/Users/{id}/Items, the bundled
+ * emby-items.json repeated to 5,000 rows or a recording of a real server:
+ * ./gradlew :app:testDebugUnitTest -PembyResponse=<file>
+ */
+public class JsonProjectionTest {
+    // kMediaCardFields of src/api/view.ts
+    private static final List<String> CARD_FIELDS = Arrays.asList(
+            "Id", "Name", "Type", "ProductionYear", "ImageTags", "BackdropImageTags");
+    private static final int ROWS = 5_000;
+
+    private static String project(String json, String... fields) throws IOException {
+        return new JsonProjection(Arrays.asList(fields)).project(new StringReader(json));
+    }
+
+    @Test
+    public void projectsATopLevelArray() throws IOException {
+        String json = "[{\"Id\":\"1\",\"Name\":\"a\",\"Overview\":\"long\",\"People\":[{\"Name\":\"x\"}]}," +
+                "{\"Id\":\"2\",\"UserData\":{\"Played\":true}},{}]";
+        assertEquals("[{\"Id\":\"1\",\"Name\":\"a\"},{\"Id\":\"2\"},{}]", project(json, "Id", "Name"));
+    }
+
+    @Test
+    public void projectsTheItemsOfAQueryResult() throws IOException {
+        String json = "{\"Items\":[{\"Id\":\"1\",\"Type\":\"Movie\",\"Path\":\"/a.mkv\"}],\"TotalRecordCount\":120," +
+                "\"StartIndex\":50,\"Filters\":{\"IsFolder\":false},\"Tags\":[\"a\"],\"Name\":null}";
+        assertEquals("{\"Items\":[{\"Id\":\"1\",\"Type\":\"Movie\"}],\"TotalRecordCount\":120,\"StartIndex\":50,\"Name\":null}",
+                project(json, "Id", "Type"));
+    }
+
+    @Test
+    public void followsDottedPathsThroughArrays() throws IOException {
+        String json = "[{\"Id\":\"1\"," +
+                "\"MediaSources\":[{\"Id\":\"m\",\"MediaStreams\":[{\"Codec\":\"h264\",\"Index\":0},{\"Codec\":\"ac3\",\"Index\":1}]}," +
+                "{\"MediaStreams\":[]}]," +
+                "\"ImageTags\":{\"Primary\":\"p\",\"Logo\":\"l\"}," +
+                "\"People\":[{\"Name\":\"x\",\"Role\":\"y\"}]," +
+                "\"UserData\":{\"Played\":false,\"PlayCount\":3}}]";
+        assertEquals("[{\"MediaSources\":[{\"MediaStreams\":[{\"Codec\":\"h264\"},{\"Codec\":\"ac3\"}]},{\"MediaStreams\":[]}]," +
+                        "\"ImageTags\":{\"Primary\":\"p\"}," +
+                        "\"People\":[{\"Name\":\"x\",\"Role\":\"y\"}]," +
+                        "\"UserData\":{\"Played\":false,\"PlayCount\":3}}]",
+                // a path below a field kept whole changes nothing
+                project(json, "MediaSources.MediaStreams.Codec", "ImageTags.Primary", "People", "UserData", "UserData.Played"));
+    }
+
+    @Test
+    public void keepsNumberLiteralsExactly() throws IOException {
+        String json = "[{\"RunTimeTicks\":72000000000000000001,\"Size\":9007199254740993,\"Rating\":7.30," +
+                "\"Ratio\":0.6666666666666666,\"Small\":1e-7,\"Huge\":1.0E+400,\"Zero\":-0,\"Count\":-12}]";
+        assertEquals(json, project(json, "RunTimeTicks", "Size", "Rating", "Ratio", "Small", "Huge", "Zero", "Count"));
+    }
+
+    @Test
+    public void keepsStringsAndLiteralsAsTheyAre() throws IOException {
+        String json = "{\"Items\":[{\"Name\":\"Am\u00e9lie \\\"2\\\" \\u2028\",\"IsFolder\":true,\"Parent\":null}],\"Total\":1.50}";
+        JsonObject projected = JsonParser.parseString(project(json, "Name", "IsFolder", "Parent")).getAsJsonObject();
+        JsonObject row = projected.getAsJsonArray("Items").get(0).getAsJsonObject();
+        assertEquals("Am\u00e9lie \"2\" \u2028", row.get("Name").getAsString());
+        assertTrue(row.get("IsFolder").getAsBoolean());
+        assertTrue(row.get("Parent").isJsonNull());
+        assertEquals("1.50", projected.get("Total").getAsString());
+    }
+
+    @Test
+    public void benchmarksRecordedResponse() throws IOException {
+        String body = recorded();
+        JsonProjection projection = new JsonProjection(CARD_FIELDS);
+        for (int i = 0; i < 3; i++) {
+            JsonParser.parseString(body);
+            projection.project(new StringReader(body));
+        }
+
+        int runs = 10;
+        long allocated = allocated();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            JsonParser.parseString(body);
+        }
+        long parseTime = (System.nanoTime() - start) / runs;
+        long parseAllocated = (allocated() - allocated) / runs;
+
+        String projected = null;
+        allocated = allocated();
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            projected = projection.project(new StringReader(body));
+        }
+        long projectTime = (System.nanoTime() - start) / runs;
+        long projectAllocated = (allocated() - allocated) / runs;
+
+        JsonArray rows = JsonParser.parseString(body).getAsJsonObject().getAsJsonArray("Items");
+        System.out.printf("%d rows, %d KiB%n", rows.size(), body.length() / 1024);
+        System.out.printf("full parse: %.1f ms, %d KiB allocated, %d KiB over the bridge%n",
+                parseTime / 1e6, parseAllocated / 1024, body.length() / 1024);
+        System.out.printf("projection: %.1f ms, %d KiB allocated, %d KiB over the bridge%n",
+                projectTime / 1e6, projectAllocated / 1024, projected.length() / 1024);
+
+        JsonArray kept = JsonParser.parseString(projected).getAsJsonObject().getAsJsonArray("Items");
+        assertEquals(rows.size(), kept.size());
+        for (int i = 0; i < rows.size(); i++) {
+            JsonObject row = rows.get(i).getAsJsonObject();
+            JsonObject card = kept.get(i).getAsJsonObject();
+            for (String field : CARD_FIELDS) {
+                assertEquals(row.get(field), card.get(field));
+            }
+            assertTrue(card.keySet().size() <= CARD_FIELDS.size());
+        }
+        assertTrue(projected.length() < body.length() / 10);
+    }
+
+    // the response given by -PembyResponse or the bundled rows repeated, ids kept unique
+    private String recorded() throws IOException {
+        String file = System.getProperty("emby.response");
+        if (file != null) {
+            return new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        }
+        JsonObject sample;
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("emby-items.json");
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            sample = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+        JsonArray items = sample.getAsJsonArray("Items");
+        JsonArray rows = new JsonArray();
+        for (int i = 0; i < ROWS; i++) {
+            JsonObject row = items.get(i % items.size()).getAsJsonObject().deepCopy();
+            row.addProperty("Id", String.valueOf(100_000 + i));
+            rows.add(row);
+        }
+        JsonObject response = new JsonObject();
+        response.add("Items", rows);
+        response.addProperty("TotalRecordCount", ROWS);
+        return response.toString();
+    }
+
+    // bytes allocated by this thread so far, 0 on a JVM that does not count them
+    private static long allocated() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,230 @@
+package top.ourfor.app.iPlayClient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the proxy in front of a local HTTP server, the Range header of every upstream request
+ * is recorded so the tests see which bytes came from the cache.
+ */
+public class MediaProxyTest {
+    private static final int BLOCK = MediaCache.BLOCK_SIZE;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // bigger than one segment and not a whole number of blocks
+    private final byte[] data = new byte[MediaCache.SEGMENT_SIZE + 5 * BLOCK + 1234];
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean ranges = true;
+    private HttpServer server;
+    private ExecutorService executor;
+    private String remote;
+
+    private static class Response {
+        final int status;
+        final String location;
+        final byte[] body;
+
+        Response(int status, String location, byte[] body) {
+            this.status = status;
+            this.location = location;
+            this.body = body;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(18).nextBytes(data);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            requests.add(String.valueOf(range));
+            int from = 0;
+            int to = data.length - 1;
+            int status = 200;
+            Matcher matcher = RANGE.matcher(String.valueOf(range));
+            if (ranges && matcher.matches()) {
+                from = Integer.parseInt(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) to = Math.min(to, Integer.parseInt(matcher.group(2)));
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+            exchange.sendResponseHeaders(status, to - from + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data, from, to - from + 1);
+            } catch (IOException ignored) {
+                // the proxy drops its connection once the read-ahead window is full
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        remote = "http://127.0.0.1:" + server.getAddress().getPort() + "/Videos/1/stream.mp4?Static=true&api_key=secret";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private MediaProxy proxy(File dir, long readAhead) {
+        MediaProxy proxy = new MediaProxy();
+        proxy.setReadAhead(readAhead);
+        proxy.start(dir, 512L * 1024 * 1024);
+        return proxy;
+    }
+
+    private static Response get(String url, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setReadTimeout(20_000);
+        if (range != null) connection.setRequestProperty("Range", range);
+        try {
+            int status = connection.getResponseCode();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (status < 300) {
+                try (InputStream in = connection.getInputStream()) {
+                    byte[] buffer = new byte[BLOCK];
+                    int count;
+                    while ((count = in.read(buffer)) >= 0) body.write(buffer, 0, count);
+                }
+            }
+            return new Response(status, connection.getHeaderField("Location"), body.toByteArray());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private byte[] slice(long from, long to) {
+        return Arrays.copyOfRange(data, (int) from, (int) to + 1);
+    }
+
+    // upstream requests for media data, the probe of each new source asks for the first byte only
+    private List<String> fetches() {
+        List<String> fetches = new ArrayList<>();
+        for (String range : requests) {
+            if (!range.equals("bytes=0-0")) fetches.add(range);
+        }
+        return fetches;
+    }
+
+    @Test
+    public void keyDropsSessionParameters() {
+        String url = "http://host/Videos/1/stream.mkv?Static=true&MediaSourceId=a";
+        assertEquals(MediaKey.of(url), MediaKey.of(url + "&api_key=x&PlaySessionId=y"));
+        assertEquals(MediaKey.of(url), MediaKey.of("http://host/Videos/1/stream.mkv?api_key=z&Static=true&MediaSourceId=a"));
+        assertEquals("http://host/a#t", MediaKey.stable("http://host/a?X-Emby-Token=t#t"));
+        assertNotEquals(MediaKey.of(url), MediaKey.of("http://host/Videos/1/stream.mkv?Static=true&MediaSourceId=b"));
+    }
+
+    @Test
+    public void readsColdFromUpstream() throws IOException {
+        MediaProxy proxy = proxy(folder.newFolder(), 8L * BLOCK);
+        String local = proxy.url(remote);
+        assertTrue(local.startsWith("http://127.0.0.1:"));
+
+        Response response = get(local, null);
+        assertEquals(200, response.status);
+        assertArrayEquals(data, response.body);
+        assertTrue(fetches().contains("bytes=0-"));
+
+        response = get(local, "bytes=100-" + (3 * BLOCK + 7));
+        assertEquals(206, response.status);
+        assertArrayEquals(slice(100, 3 * BLOCK + 7), response.body);
+    }
+
+    @Test
+    public void replaysFromTheCache() throws IOException {
+        MediaProxy proxy = proxy(folder.newFolder(), 32L * 1024 * 1024);
+        String local = proxy.url(remote);
+        assertArrayEquals(data, get(local, null).body);
+        int upstream = requests.size();
+
+        assertArrayEquals(data, get(local, null).body);
+        long from = MediaCache.SEGMENT_SIZE - 10;
+        assertArrayEquals(slice(from, data.length - 1), get(local, "bytes=" + from + "-").body);
+        assertArrayEquals(slice(data.length - 500, data.length - 1), get(local, "bytes=-500").body);
+        assertEquals(upstream, requests.size());
+    }
+
+    @Test
+    public void fetchesFromTheGapASeekLandsIn() throws IOException {
+        MediaProxy proxy = proxy(folder.newFolder(), 2L * BLOCK);
+        String local = proxy.url(remote);
+        assertArrayEquals(slice(0, 999), get(local, "bytes=0-999").body);
+        assertEquals(Arrays.asList("bytes=0-"), fetches());
+
+        // past the read-ahead window, nothing of it is cached
+        long from = 40L * BLOCK + 17;
+        long to = from + 3 * BLOCK;
+        assertArrayEquals(slice(from, to), get(local, "bytes=" + from + "-" + to).body);
+        assertEquals("bytes=" + 40L * BLOCK + "-", fetches().get(1));
+        for (String range : fetches()) {
+            Matcher matcher = RANGE.matcher(range);
+            assertTrue(matcher.matches());
+            long start = Long.parseLong(matcher.group(1));
+            assertTrue(range, start == 0 || start >= 40L * BLOCK);
+        }
+    }
+
+    @Test
+    public void redirectsSourcesWithoutRanges() throws IOException {
+        ranges = false;
+        MediaProxy proxy = proxy(folder.newFolder(), 8L * BLOCK);
+        Response response = get(proxy.url(remote), "bytes=0-");
+        assertEquals(302, response.status);
+        assertEquals(remote, response.location);
+    }
+
+    @Test
+    public void keepsTheIndexAcrossReopen() throws Exception {
+        File dir = folder.newFolder();
+        MediaProxy proxy = proxy(dir, 3L * BLOCK);
+        long to = 3L * BLOCK - 1;
+        assertArrayEquals(slice(0, to), get(proxy.url(remote), "bytes=0-" + to).body);
+        proxy.flush().get();
+
+        // a new process: only the probe reaches the server, the blocks come from the segment files
+        requests.clear();
+        MediaProxy reopened = proxy(dir, BLOCK);
+        assertArrayEquals(slice(0, to), get(reopened.url(remote), "bytes=0-" + to).body);
+        assertEquals(Arrays.asList("bytes=0-0"), requests);
+
+        MediaCache cache = new MediaCache(dir, 512L * 1024 * 1024);
+        MediaCache.Resource resource = cache.open(MediaKey.of(remote));
+        assertEquals(data.length, resource.length);
+        assertEquals(3, cache.firstMissing(resource, 0, 3));
+    }
+}
@@ -0,0 +1,124 @@
+package top.ourfor.app.iPlayClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import top.ourfor.lib.mpv.EventRecords;
+import top.ourfor.lib.mpv.MPV;
+
+/**
+ * Counts what the JVM part of a tick allocates: records decoded by EventBuffer.next, rate limited by
+ * PropertyDispatcher and written into the reused PlaybackState the way PlayerView does. The WritableMap
+ * handed to the bridge afterwards is not part of it, RCTEventEmitter takes ownership of one per event.
+ */
+public class PlaybackStatePathTest {
+    private static final int TIME_POS_NAME = 0;
+    private static final int DURATION_NAME = 1;
+    private static final int PAUSE_NAME = 2;
+
+    // PlayerView without the view
+    private static class StateListener implements PlayerEventListener {
+        final PlaybackState state = new PlaybackState();
+        double position;
+        double duration;
+        int emitted;
+
+        @Override
+        public void onPropertyChange(int id, double value) {
+            if (id == PlayerProperty.TimePos) {
+                position = value;
+                emit(Player.PlayEventType.PlayEventTypeOnProgress);
+            } else if (id == PlayerProperty.Duration) {
+                duration = value;
+            }
+        }
+
+        @Override
+        public void onPropertyChange(int id, boolean value) {
+            if (id == PlayerProperty.Pause) emit(Player.PlayEventType.PlayEventTypeOnPause);
+        }
+
+        private void emit(Player.PlayEventType type) {
+            state.set(type.value, position, duration);
+            emitted++;
+        }
+    }
+
+    private final MPV.EventBuffer events = new MPV.EventBuffer(64 * 1024);
+    private final EventRecords records = new EventRecords(events)
+            .name(TIME_POS_NAME, "time-pos")
+            .name(DURATION_NAME, "duration")
+            .name(PAUSE_NAME, "pause");
+    private final MPV.Event event = new MPV.Event();
+    private final PropertyDispatcher dispatcher = new PropertyDispatcher();
+    private final StateListener listener = new StateListener();
+    private long now;
+    private double position;
+
+    // one drainEvents worth of events, a frame apart as mpv reports time-pos
+    private void burst() {
+        records.clear();
+        for (int i = 0; i < 8; i++) {
+            position += 0.04;
+            records.change(PlayerProperty.TimePos, TIME_POS_NAME, position);
+        }
+        records.change(PlayerProperty.Duration, DURATION_NAME, 5400.0);
+        records.change(PlayerProperty.Pause, PAUSE_NAME, false);
+        records.event(MPV.MPV_EVENT_PLAYBACK_RESTART);
+        records.publish();
+        while (events.next(event)) {
+            if (event.type != MPV.MPV_EVENT_PROPERTY_CHANGE) continue;
+            now += 40_000_000L;
+            dispatcher.dispatch(event, now);
+        }
+        dispatcher.flush(now, false);
+    }
+
+    @Test
+    public void deliversTicksWithoutAllocating() {
+        assumeTrue("the JVM does not count allocations", allocated() >= 0);
+        dispatcher.setListener(listener);
+        dispatcher.setMaxRate(PlayerProperty.TimePos, 4);
+        for (int i = 0; i < 20_000; i++) burst();
+
+        int emitted = listener.emitted;
+        long overhead = -allocated() + allocated();
+        long before = allocated();
+        for (int i = 0; i < 10_000; i++) burst();
+        long allocated = allocated() - before - overhead;
+
+        System.out.printf("%d events, %d emitted, %d bytes allocated%n", 10_000 * 11, listener.emitted - emitted, allocated);
+        assertEquals(0, allocated);
+        assertEquals(5400.0, listener.state.duration, 0);
+        assertEquals(Player.PlayEventType.PlayEventTypeOnPause.value, listener.state.type);
+    }
+
+    @Test
+    public void decodesRecordsInPlace() {
+        records.clear().change(PlayerProperty.TimePos, TIME_POS_NAME, 12.5).change(PlayerProperty.Pause, PAUSE_NAME, true).publish();
+        MPV.Event first = new MPV.Event();
+        events.next(first);
+        assertEquals(MPV.MPV_EVENT_PROPERTY_CHANGE, first.type);
+        assertEquals(PlayerProperty.TimePos, first.replyUserdata);
+        assertEquals("time-pos", first.prop);
+        assertEquals(12.5, first.doubleValue, 0);
+        events.next(first);
+        assertEquals("pause", first.prop);
+        assertEquals(true, first.flag);
+        assertEquals(false, events.next(first));
+    }
+
+    // bytes allocated by this thread so far, -1 on a JVM that does not count them
+    private static long allocated() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+package top.ourfor.app.iPlayClient;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import top.ourfor.lib.mpv.MPV;
+
+/**
+ * Times acquire on a cold and on a warm pool and what release costs the calling thread,
+ * with mpv built for the host:
+ * ./gradlew :app:testDebugUnitTest -PmpvLibraryPath=<dir with libmpv and libplayer>
+ * Skipped without it.
+ */
+public class PlayerPoolTest {
+    private static final int RUNS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String configDir;
+    private String cacheDir;
+    private String fontDir;
+
+    @Before
+    public void setUp() throws Exception {
+        try {
+            new MPV();
+        } catch (LinkageError e) {
+            assumeNoException("no host build of mpv, pass -PmpvLibraryPath", e);
+        }
+        configDir = folder.newFolder("config").getPath();
+        cacheDir = folder.newFolder("cache").getPath();
+        fontDir = folder.newFolder("fonts").getPath();
+    }
+
+    @Test
+    public void reusesReleasedPlayers() throws Exception {
+        PlayerPool pool = new PlayerPool();
+        PlayerViewModel player = pool.acquire(configDir, cacheDir, fontDir);
+        pool.release(player).get(10, TimeUnit.SECONDS);
+        assertSame(player, pool.acquire(configDir, cacheDir, fontDir));
+
+        // a full pool destroys the player instead
+        pool.setCapacity(0);
+        pool.release(player).get(10, TimeUnit.SECONDS);
+        assertNotSame(player, pool.acquire(configDir, cacheDir, fontDir));
+    }
+
+    @Test
+    public void benchmarksColdAndWarmAcquire() throws Exception {
+        PlayerPool pool = new PlayerPool();
+        pool.setCapacity(1);
+        // mpv's one time initialization and the JIT
+        pool.release(pool.acquire(configDir, cacheDir, fontDir)).get(10, TimeUnit.SECONDS);
+
+        long cold = 0;
+        long warm = 0;
+        long release = 0;
+        for (int i = 0; i < RUNS; i++) {
+            // drops the idle player
+            pool.setCapacity(0);
+            pool.setCapacity(1);
+
+            long start = System.nanoTime();
+            PlayerViewModel player = pool.acquire(configDir, cacheDir, fontDir);
+            cold += System.nanoTime() - start;
+
+            release += released(pool, player);
+            start = System.nanoTime();
+            PlayerViewModel reused = pool.acquire(configDir, cacheDir, fontDir);
+            warm += System.nanoTime() - start;
+            assertSame(player, reused);
+
+            release += released(pool, reused);
+        }
+        System.out.printf("acquire cold: %.2f ms, warm: %.3f ms, release on the caller: %.3f ms%n",
+                cold / 1e6 / RUNS, warm / 1e6 / RUNS, release / 1e6 / RUNS / 2);
+        assertTrue(warm < cold);
+    }
+
+    // nanoseconds release blocked the caller, waits until the player is back in the pool
+    private static long released(PlayerPool pool, PlayerViewModel player) throws Exception {
+        long start = System.nanoTime();
+        Future<Void> future = pool.release(player);
+        long elapsed = System.nanoTime() - start;
+        future.get(10, TimeUnit.SECONDS);
+        return elapsed;
+    }
+}
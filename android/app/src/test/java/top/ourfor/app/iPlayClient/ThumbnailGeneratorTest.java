@@ -0,0 +1,103 @@
+package top.ourfor.app.iPlayClient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import top.ourfor.lib.mpv.MPV;
+
+/**
+ * Runs the generator against a local file with mpv built for the host:
+ * ./gradlew :app:testDebugUnitTest -PmpvLibraryPath=<dir with libmpv and libplayer> -PmpvSample=<media file>
+ * Skipped when either is missing.
+ */
+public class ThumbnailGeneratorTest {
+    private static class Collector implements ThumbnailGenerator.Sink {
+        final List<ThumbnailGenerator.Sheet> sheets = new ArrayList<>();
+        RuntimeException error;
+        Boolean complete;
+
+        @Override
+        public void onSheet(ThumbnailGenerator generator, ThumbnailGenerator.Sheet sheet) {
+            sheets.add(sheet);
+        }
+
+        @Override
+        public void onFinished(ThumbnailGenerator generator, boolean complete) {
+            this.complete = complete;
+        }
+
+        @Override
+        public void onError(ThumbnailGenerator generator, RuntimeException e) {
+            error = e;
+        }
+    }
+
+    private String sample;
+
+    @Before
+    public void setUp() {
+        sample = System.getProperty("mpv.sample");
+        assumeTrue("no sample, pass -PmpvSample", sample != null && new File(sample).isFile());
+        try {
+            new MPV();
+        } catch (LinkageError e) {
+            assumeNoException("no host build of mpv, pass -PmpvLibraryPath", e);
+        }
+    }
+
+    @Test
+    public void generatesEveryTile() {
+        Collector sink = new Collector();
+        ThumbnailGenerator generator = new ThumbnailGenerator("sample", sample, 10, 0, 0, sink);
+        generator.run();
+
+        assertNull(sink.error);
+        assertEquals(Boolean.TRUE, sink.complete);
+        assertTrue(generator.duration > 0);
+        int tiles = (int) Math.ceil(generator.duration / 10);
+        assertEquals((tiles + ThumbnailGenerator.TILES - 1) / ThumbnailGenerator.TILES, sink.sheets.size());
+        for (int i = 0; i < sink.sheets.size(); i++) {
+            ThumbnailGenerator.Sheet sheet = sink.sheets.get(i);
+            assertEquals(i, sheet.index);
+            assertEquals(ThumbnailGenerator.TILE_WIDTH, sheet.tileWidth);
+            assertTrue(sheet.tileHeight > 0);
+            int expected = i < sink.sheets.size() - 1 ? ThumbnailGenerator.TILES : tiles - i * ThumbnailGenerator.TILES;
+            assertEquals(expected, sheet.tiles);
+        }
+    }
+
+    @Test
+    public void resumesWithTheFirstMissingSheet() {
+        Collector sink = new Collector();
+        // one second apart so even a short sample fills more than one sheet
+        ThumbnailGenerator generator = new ThumbnailGenerator("sample", sample, 1, 1, 0, sink);
+        generator.run();
+
+        assertEquals(Boolean.TRUE, sink.complete);
+        for (ThumbnailGenerator.Sheet sheet : sink.sheets) {
+            assertTrue(sheet.index >= 1);
+        }
+    }
+
+    @Test
+    public void stopsOnceCancelled() {
+        Collector sink = new Collector();
+        ThumbnailGenerator generator = new ThumbnailGenerator("sample", sample, 10, 0, 0, sink);
+        generator.cancel();
+        generator.run();
+
+        assertEquals(Boolean.FALSE, sink.complete);
+        assertTrue(sink.sheets.isEmpty());
+        assertTrue(generator.isCancelled());
+    }
+}
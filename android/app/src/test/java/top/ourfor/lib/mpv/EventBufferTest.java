@@ -0,0 +1,118 @@
+package top.ourfor.lib.mpv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes records written by {@link EventRecords} in the layout of write_event in Player.cpp.
+ */
+public class EventBufferTest {
+    private static final int TRACK_LIST = 0;
+    private static final int MEDIA_TITLE = 1;
+    private static final int TIME_POS = 2;
+
+    private final MPV.EventBuffer events = new MPV.EventBuffer(4 * 1024);
+    private final EventRecords records = new EventRecords(events)
+            .name(TRACK_LIST, "track-list")
+            .name(MEDIA_TITLE, "media-title")
+            .name(TIME_POS, "time-pos");
+    private final MPV.Event event = new MPV.Event();
+
+    private static Map<String, Object> track(long id, String type, String title, boolean selected) {
+        HashMap<String, Object> track = new HashMap<>();
+        track.put("id", id);
+        track.put("type", type);
+        track.put("title", title);
+        track.put("selected", selected);
+        track.put("demux-fps", 23.976);
+        return track;
+    }
+
+    @Test
+    public void decodesNodeValues() {
+        List<Object> tracks = Arrays.asList(
+                track(1, "video", "Main", true),
+                track(2, "audio", "Fran\u00e7ais", false),
+                track(3, "sub", "", false));
+        records.clear().node(5, TRACK_LIST, tracks).publish();
+
+        assertTrue(events.next(event));
+        assertEquals(MPV.MPV_EVENT_PROPERTY_CHANGE, event.type);
+        assertEquals(MPV.MPV_FORMAT_NODE, event.format);
+        assertEquals(5, event.replyUserdata);
+        assertEquals("track-list", event.prop);
+        assertNull(event.string);
+        assertEquals(tracks, event.node);
+        assertEquals(tracks, event.value());
+        assertFalse(events.next(event));
+    }
+
+    @Test
+    public void decodesEveryNodeFormat() {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("flag", false);
+        map.put("negative", -1L);
+        map.put("bytes", new byte[]{1, 2, 3});
+        map.put("none", null);
+        map.put("empty", new ArrayList<>());
+        map.put("nested", new HashMap<>(map));
+        records.clear().node(1, TRACK_LIST, map).publish();
+
+        assertTrue(events.next(event));
+        Map<?, ?> node = (Map<?, ?>) event.node;
+        assertEquals(map.keySet(), node.keySet());
+        assertEquals(false, node.get("flag"));
+        assertEquals(-1L, node.get("negative"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) node.get("bytes"));
+        assertNull(node.get("none"));
+        assertEquals(new ArrayList<>(), node.get("empty"));
+        assertEquals(5, ((Map<?, ?>) node.get("nested")).size());
+    }
+
+    @Test
+    public void keepsRecordsAfterAPayloadAligned() {
+        records.clear()
+                .change(2, MEDIA_TITLE, "caf\u00e9 au lait")
+                .node(5, TRACK_LIST, "odd")
+                .change(1, TIME_POS, 12.5)
+                .event(MPV.MPV_EVENT_PLAYBACK_RESTART)
+                .publish();
+
+        assertTrue(events.next(event));
+        assertEquals("caf\u00e9 au lait", event.string);
+        assertNull(event.node);
+        assertTrue(events.next(event));
+        assertEquals("odd", event.node);
+        assertNull(event.string);
+        assertTrue(events.next(event));
+        assertEquals("time-pos", event.prop);
+        assertEquals(12.5, event.doubleValue, 0);
+        assertNull(event.node);
+        assertTrue(events.next(event));
+        assertEquals(MPV.MPV_EVENT_PLAYBACK_RESTART, event.type);
+        assertNull(event.prop);
+        assertFalse(events.next(event));
+    }
+
+    @Test
+    public void growsToTheSizeOfALargerRecord() {
+        events.grow(3000);
+        assertEquals(4 * 1024, events.buffer.capacity());
+        events.grow(64 * 1024 + 8);
+        assertEquals(128 * 1024, events.buffer.capacity());
+        assertTrue(events.buffer.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), events.buffer.order());
+    }
+}
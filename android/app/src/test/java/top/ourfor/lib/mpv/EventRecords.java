@@ -0,0 +1,133 @@
+package top.ourfor.lib.mpv;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records into an {@link MPV.EventBuffer} in the layout of write_event in Player.cpp,
+ * for tests of the event path that run without the native library.
+ */
+public class EventRecords {
+    private final MPV.EventBuffer events;
+    private int offset;
+    private int count;
+
+    public EventRecords(MPV.EventBuffer events) {
+        this.events = events;
+    }
+
+    // what propertyName would answer for the id
+    public EventRecords name(int prop, String name) {
+        if (prop >= events.names.length) events.names = Arrays.copyOf(events.names, prop + 1);
+        events.names[prop] = name;
+        return this;
+    }
+
+    public EventRecords clear() {
+        offset = 0;
+        count = 0;
+        return this;
+    }
+
+    public EventRecords change(long userdata, int prop, double value) {
+        return header(MPV.MPV_EVENT_PROPERTY_CHANGE, MPV.MPV_FORMAT_DOUBLE, userdata, prop, Double.doubleToRawLongBits(value));
+    }
+
+    public EventRecords change(long userdata, int prop, boolean value) {
+        return header(MPV.MPV_EVENT_PROPERTY_CHANGE, MPV.MPV_FORMAT_FLAG, userdata, prop, value ? 1 : 0);
+    }
+
+    public EventRecords change(long userdata, int prop, String value) {
+        return payload(header(MPV.MPV_EVENT_PROPERTY_CHANGE, MPV.MPV_FORMAT_STRING, userdata, prop, 0),
+                value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // value is encoded the way write_node does it, from the types getNodeProperty returns
+    public EventRecords node(long userdata, int prop, Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encode(value, out);
+        return payload(header(MPV.MPV_EVENT_PROPERTY_CHANGE, MPV.MPV_FORMAT_NODE, userdata, prop, 0), out.toByteArray());
+    }
+
+    public EventRecords event(int type) {
+        return header(type, MPV.MPV_FORMAT_NONE, 0, -1, 0);
+    }
+
+    // makes the records written since clear the ones next returns
+    public void publish() {
+        events.reset(count);
+    }
+
+    private EventRecords header(int type, int format, long userdata, int prop, long value) {
+        ByteBuffer buffer = events.buffer;
+        buffer.putInt(offset, type);
+        buffer.putInt(offset + 4, format);
+        buffer.putLong(offset + 8, userdata);
+        buffer.putInt(offset + 16, prop);
+        buffer.putInt(offset + 20, 0);
+        buffer.putLong(offset + 24, value);
+        buffer.putInt(offset + 32, 0);
+        buffer.putInt(offset + 36, 0);
+        offset += MPV.EventBuffer.HEADER_SIZE;
+        count++;
+        return this;
+    }
+
+    private EventRecords payload(EventRecords records, byte[] payload) {
+        int start = offset - MPV.EventBuffer.HEADER_SIZE;
+        events.buffer.putInt(start + 20, payload.length);
+        for (int i = 0; i < payload.length; i++) {
+            events.buffer.put(offset + i, payload[i]);
+        }
+        offset += (payload.length + 7) & ~7;
+        return records;
+    }
+
+    private static void encode(Object value, ByteArrayOutputStream out) {
+        if (value instanceof String) {
+            out.write(MPV.MPV_FORMAT_STRING);
+            bytes(((String) value).getBytes(StandardCharsets.UTF_8), out);
+        } else if (value instanceof Boolean) {
+            out.write(MPV.MPV_FORMAT_FLAG);
+            out.write((Boolean) value ? 1 : 0);
+        } else if (value instanceof Long) {
+            out.write(MPV.MPV_FORMAT_INT64);
+            write(ByteBuffer.allocate(8).order(ByteOrder.nativeOrder()).putLong((Long) value), out);
+        } else if (value instanceof Double) {
+            out.write(MPV.MPV_FORMAT_DOUBLE);
+            write(ByteBuffer.allocate(8).order(ByteOrder.nativeOrder()).putDouble((Double) value), out);
+        } else if (value instanceof List) {
+            out.write(MPV.MPV_FORMAT_NODE_ARRAY);
+            List<?> list = (List<?>) value;
+            write(ByteBuffer.allocate(4).order(ByteOrder.nativeOrder()).putInt(list.size()), out);
+            for (Object item : list) encode(item, out);
+        } else if (value instanceof Map) {
+            out.write(MPV.MPV_FORMAT_NODE_MAP);
+            Map<?, ?> map = (Map<?, ?>) value;
+            write(ByteBuffer.allocate(4).order(ByteOrder.nativeOrder()).putInt(map.size()), out);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                bytes(((String) entry.getKey()).getBytes(StandardCharsets.UTF_8), out);
+                encode(entry.getValue(), out);
+            }
+        } else if (value instanceof byte[]) {
+            out.write(MPV.MPV_FORMAT_BYTE_ARRAY);
+            bytes((byte[]) value, out);
+        } else {
+            out.write(MPV.MPV_FORMAT_NONE);
+        }
+    }
+
+    private static void bytes(byte[] bytes, ByteArrayOutputStream out) {
+        write(ByteBuffer.allocate(4).order(ByteOrder.nativeOrder()).putInt(bytes.length), out);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void write(ByteBuffer buffer, ByteArrayOutputStream out) {
+        out.write(buffer.array(), 0, buffer.position());
+    }
+}
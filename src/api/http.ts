@@ -0,0 +1,78 @@
+import { EmbySite } from "@model/EmbySite";
+import { Version } from "@helper/device";
+import { EmbyHttpModule, EmbyRequestPriority } from "@helper/native";
+
+export const EMBY_CLIENT_HEADERS = {
+    "X-Emby-Client": Version.displayName,
+    "X-Emby-Device-Name": "",
+    "X-Emby-Device-Id": "",
+    "X-Emby-Client-Version": Version.versionCode,
+} as any
+
+export interface EmbyRequestInit {
+    method?: "GET" | "POST"
+    // sent in addition to the client and token headers
+    headers?: Record<string, string>
+    body?: string
+    // keeps only these fields of the response rows, dotted paths like "ImageTags.Primary", Android only
+    fields?: string[]
+    priority?: EmbyRequestPriority
+    signal?: AbortSignal
+}
+
+export interface EmbyHttpResponse {
+    status: number
+    ok: boolean
+    json(): Promise<any>
+    text(): Promise<string>
+}
+
+// client and token headers of the site, as sent with every request
+export const clientHeaders = (site: EmbySite) => {
+    const headers: Record<string, string> = {}
+    Object.entries({...EMBY_CLIENT_HEADERS, "X-Emby-Token": site.user.AccessToken}).forEach(([key, value]) => {
+        headers[key] = String(value ?? "")
+    })
+    return headers
+}
+
+const abortError = () => {
+    const error = new Error("Aborted")
+    error.name = "AbortError"
+    return error
+}
+
+let nextRequestId = 1
+let defaultHeaders: string|undefined
+
+// fetch for Emby api calls, goes through the native client when there is one:
+// identical GETs in flight share one request and playback calls skip ahead of list traffic
+export async function embyFetch(site: EmbySite, url: URL|string, init: EmbyRequestInit = {}): Promise<EmbyHttpResponse> {
+    const { method = "GET", headers, body, fields, priority = "normal", signal } = init
+    const client = clientHeaders(site)
+    if (!EmbyHttpModule) {
+        return await fetch(url.toString(), {method, body, signal, headers: {...client, ...headers}})
+    }
+    const key = JSON.stringify(client)
+    if (key !== defaultHeaders) {
+        EmbyHttpModule.setDefaultHeaders(client)
+        defaultHeaders = key
+    }
+    if (signal?.aborted) throw abortError()
+    const id = nextRequestId++
+    return await new Promise<EmbyHttpResponse>((resolve, reject) => {
+        const abort = () => {
+            EmbyHttpModule.cancel(id)
+            reject(abortError())
+        }
+        signal?.addEventListener("abort", abort)
+        EmbyHttpModule.request(id, {url: url.toString(), method, headers, body, fields, priority})
+            .then(({status, body}) => resolve({
+                status,
+                ok: status >= 200 && status < 300,
+                json: async () => JSON.parse(body),
+                text: async () => body,
+            }), reject)
+            .finally(() => signal?.removeEventListener("abort", abort))
+    })
+}
@@ -3,7 +3,7 @@ import { PlaybackInfo } from "../model/PlaybackInfo";
 import device from "./device.json"
 import { EmbySite } from "@model/EmbySite";
 import { MediaDetail } from "@model/MediaDetail";
-import { EMBY_CLIENT_HEADERS } from "./view";
+import { embyFetch } from "./http";
 
 export async function getPlaybackInfo(site: EmbySite, id: number, option?: {
     MaxStreamingBitrate?: number
@@ -19,12 +19,12 @@ export async function getPlaybackInfo(site: EmbySite, id: number, option?: {
         reqformat: "json"
     }
     const url = makeEmbyUrl(params, `emby/Items/${id}/PlaybackInfo`, site.server)
-    const headers = {
-        ...EMBY_CLIENT_HEADERS,
-        "X-Emby-Token": site.user.AccessToken,
-        "content-type": "text/plain"
-    }
-    const response = await fetch(url, {method: "POST", body: JSON.stringify(device), headers})
+    const response = await embyFetch(site, url, {
+        method: "POST",
+        body: JSON.stringify(device),
+        headers: {"content-type": "text/plain"},
+        priority: "playback"
+    })
     return await response.json() as PlaybackInfo
 }
 
@@ -6,35 +6,24 @@ import { Season } from "@model/Season";
 import { EmbyResponse } from "@model/EmbyResponse";
 import { Episode } from "@model/Episode";
 import { EmbySite } from "@model/EmbySite";
-import { Version } from "@helper/device";
 import { UserData } from "@model/UserData";
 import { PlaybackData, kPlaybackData } from "@model/PlaybackData";
+import { EMBY_CLIENT_HEADERS, EmbyRequestInit, embyFetch } from "./http";
 
-export const EMBY_CLIENT_HEADERS = {
-    "X-Emby-Client": Version.displayName,
-    "X-Emby-Device-Name": "",
-    "X-Emby-Device-Id": "",
-    "X-Emby-Client-Version": Version.versionCode, 
-} as any
+export { EMBY_CLIENT_HEADERS };
 
-export async function getView(site: EmbySite) {
-    const token = site.user.AccessToken
+export async function getView(site: EmbySite, init?: Pick<EmbyRequestInit, "signal">) {
     const uid = site.user.User.Id
     const params = {
         "X-Emby-Language": "zh-cn"
     }
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Views`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": token,
-        }
-    });
+    const response = await embyFetch(site, url, {signal: init?.signal});
     const data = await response.json() as View
     return data
 }
 
-export async function getLatestMedia(site: EmbySite, parentId: number) {
+export async function getLatestMedia(site: EmbySite, parentId: number, init?: Pick<EmbyRequestInit, "signal">) {
     const params = {
         Limit: 16,
         Fields: "BasicSyncInfo,CanDelete,Container,PrimaryImageAspectRatio,ProductionYear,Status,EndDate,Overview",
@@ -45,12 +34,7 @@ export async function getLatestMedia(site: EmbySite, parentId: number) {
     }
     const uid = site.user.User.Id
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Items/Latest`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url, {priority: "background", signal: init?.signal})
     const data = await response.json() as Media[]
     return data
 }
@@ -63,14 +47,14 @@ export async function getMedia(site: EmbySite, id: number) {
     }
     const uid = site.user.User.Id
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Items/${id}`, site.server)
-    const response = await fetch(url)
+    const response = await embyFetch(site, url)
     const data = await response.json() as MediaDetail
     return data
 }
 
 export const getActor = getMedia
 
-export async function getResume(site: EmbySite, type: "Video"|"Audio" = "Video") {
+export async function getResume(site: EmbySite, type: "Video"|"Audio" = "Video", init?: Pick<EmbyRequestInit, "signal">) {
     const params = {
         Recursive: true,
         Fields: "BasicSyncInfo,CanDelete,Container,PrimaryImageAspectRatio,ProductionYear,Status,EndDate,Overview",
@@ -82,28 +66,18 @@ export async function getResume(site: EmbySite, type: "Video"|"Audio" = "Video")
     }
     const uid = site.user.User.Id
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Items/Resume`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url, {signal: init?.signal})
     const data = await response.json() as EmbyResponse<Media>
     return data.Items
 }
 
-export async function getRecommendations(site: EmbySite) {
+export async function getRecommendations(site: EmbySite, init?: Pick<EmbyRequestInit, "signal">) {
     const uid = site.user.User.Id
     const params = {
         "X-Emby-Language": "zh-cn"
     }
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Suggestions`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url, {priority: "background", signal: init?.signal})
     const data = await response.json() as EmbyResponse<Media>
     return data.Items
 }
@@ -116,12 +90,7 @@ export async function getSeasons(site: EmbySite, id: number) {
         "X-Emby-Language": "zh-cn"
     }
     const url = makeEmbyUrl(params, `emby/Shows/${id}/Seasons`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url)
     const data = await response.json() as EmbyResponse<Season>
     return data.Items
 }
@@ -135,12 +104,7 @@ export async function getEpisodes(site: EmbySite, vid: number, sid: number) {
         "X-Emby-Language": "zh-cn"
     }
     const url = makeEmbyUrl(params, `emby/Shows/${vid}/Episodes`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url)
     const data = await response.json() as EmbyResponse<Episode>
     return data.Items
 }
@@ -171,24 +135,24 @@ export async function getItem(site: EmbySite, options: ItemOptions) {
         ...rest
     }
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Items`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url)
     const data = await response.json() as EmbyResponse<Media>
     return data
 }
 
 export const kEmbyItemPageSize = 50
+// what a media card and the movie page opened from it read
+export const kMediaCardFields = ["Id", "Name", "Type", "ProductionYear", "ImageTags", "BackdropImageTags"]
 export type CollectionOptions = {
     StartIndex?: number
     Limit?: number
+    // projects the rows down to these fields before they cross the bridge
+    fields?: string[]
 }
 export async function getCollection(site: EmbySite, cid: number, type: "Series"|"Movie" = "Series", {
     StartIndex = 0,
-    Limit = kEmbyItemPageSize
+    Limit = kEmbyItemPageSize,
+    fields
 }: CollectionOptions) {
     const uid = site.user.User.Id
     const params = {
@@ -206,12 +170,7 @@ export async function getCollection(site: EmbySite, cid: number, type: "Series"|
         Limit
     }
     const url = makeEmbyUrl(params, `emby/Users/${uid}/Items`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url, {priority: "background", fields})
     const data = await response.json() as EmbyResponse<Media>
     return data
 }
@@ -228,12 +187,7 @@ export async function searchRecommend(site: EmbySite) {
         EnableTotalRecordCount: false
     }
     const url = makeEmbyUrl(params, `/emby/Items`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url, {priority: "background"})
     const data = await response.json() as EmbyResponse<Media>
     return data
 }
@@ -253,12 +207,7 @@ export async function lookupItem(site: EmbySite, title: string) {
         Limit: 50
     }
     const url = makeEmbyUrl(params, `/emby/Items`, site.server)
-    const response = await fetch(url, {
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url)
     const data = await response.json() as EmbyResponse<Media>
     return data
 }
@@ -271,13 +220,7 @@ export async function markFavorite(site: EmbySite, id: number, favorite: boolean
     const url = favorite ?
         makeEmbyUrl(params, `emby/Users/${uid}/FavoriteItems/${id}`, site.server) :
         makeEmbyUrl(params, `emby/Users/${uid}/FavoriteItems/${id}/Delete`, site.server)
-    const response = await fetch(url, {
-        method: "POST",
-        headers: {
-            ...EMBY_CLIENT_HEADERS,
-            "X-Emby-Token": site.user.AccessToken,
-        }
-    })
+    const response = await embyFetch(site, url, {method: "POST"})
     const data = await response.json() as UserData
     return data
 }
@@ -292,15 +235,14 @@ export async function play(site: EmbySite,
         ...data
     }
     const url = makeEmbyUrl(params, `emby/Sessions/Playing/${path}`, site.server)
-    const response = await fetch(url, {
+    const response = await embyFetch(site, url, {
         method: "POST",
         headers: {
-            ...EMBY_CLIENT_HEADERS,
             "Content-Type": "application/json",
-            "X-Emby-Token": site.user.AccessToken,
             reqformat: "json"
         },
-        body: JSON.stringify(body)
+        body: JSON.stringify(body),
+        priority: "playback"
     })
     const json = await response.json() as UserData
     return json
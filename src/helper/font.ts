@@ -6,8 +6,17 @@ export interface FontModuleType extends NativeModule {
     fontFamilyList: () => string[];
     fontFamilyListAsync: () => Promise<string[]>
 
+    // Android only, creates the typeface of an external font family on first use
+    loadFontFamily?: (fontFamily: string) => boolean
+
     // iOS only
     showFontPicker: () => void
 }
 
-export const FontModule: FontModuleType = NativeModules.FontModule
\ No newline at end of file
+export const FontModule: FontModuleType = NativeModules.FontModule
+
+export const loadFontFamily = (fontFamily?: string) => {
+    if (fontFamily) {
+        FontModule.loadFontFamily?.(fontFamily)
+    }
+}
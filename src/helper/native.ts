@@ -5,4 +5,139 @@ export interface IntentModuleInterface {
     playFile(filePath: string): void;
 }
 
-export const IntentModule = NativeModules.IntentModule as IntentModuleInterface
\ No newline at end of file
+export const IntentModule = NativeModules.IntentModule as IntentModuleInterface
+
+export interface PlaybackHistogram {
+    bounds: number[]
+    counts: number[]
+    count: number
+    p50: number
+    p90: number
+    max: number
+}
+
+// phase times are milliseconds since loadVideo, -1 when the phase did not happen
+export interface PlaybackSession {
+    host?: string
+    container?: string
+    startFile: number
+    fileLoaded: number
+    videoReconfig: number
+    playbackRestart: number
+    firstFrame: number
+    stallCount: number
+    stallTime: number
+    duration: number
+}
+
+export interface PlaybackTraceModuleInterface {
+    sessions(): Promise<PlaybackSession[]>
+    histograms(): Promise<Record<string, PlaybackHistogram>>
+    clear(): void
+}
+
+export const PlaybackTraceModule = NativeModules.PlaybackTraceModule as PlaybackTraceModuleInterface
+
+export interface PlaybackQosSample {
+    time: number
+    frameDropCount: number
+    decoderFrameDropCount: number
+    cacheDuration: number
+    cacheSpeed: number
+    videoBitrate: number
+    audioBitrate: number
+    fps: number
+    hwdec: boolean
+}
+
+export interface PlaybackQosModuleInterface {
+    snapshot(limit: number): Promise<{hwdec?: string, samples: PlaybackQosSample[]}[]>
+    setLogEnabled(enabled: boolean): void
+}
+
+export const PlaybackQosModule = NativeModules.PlaybackQosModule as PlaybackQosModuleInterface
+
+export interface StartupTask {
+    name: string
+    affinity: 'main' | 'background' | 'lazy'
+    thread?: string
+    done: boolean
+    start: number
+    wait: number
+    duration: number
+}
+
+export interface StartupTrace {
+    applicationStart: number
+    applicationCreated: number
+    firstFrame: number
+    tasks: StartupTask[]
+}
+
+export interface StartupModuleInterface {
+    markFirstFrame(): void
+    trace(): Promise<StartupTrace>
+}
+
+export const StartupModule = NativeModules.StartupModule as StartupModuleInterface
+
+export type DownloadState = 'queued' | 'running' | 'paused' | 'completed' | 'failed'
+
+export interface DownloadItem {
+    id: string
+    path: string
+    state: DownloadState
+    length: number
+    downloaded: number
+    speed: number
+    error?: string
+}
+
+// progress arrives as "onDownloadProgress" events through a NativeEventEmitter
+export interface DownloadModuleInterface {
+    start(id: string, url: string): Promise<string>
+    pause(id: string): void
+    resume(id: string): void
+    remove(id: string): void
+    setLimits(maxActive: number, connectionsPerTask: number, bytesPerSecond: number): void
+    list(): Promise<DownloadItem[]>
+}
+
+export const DownloadModule = NativeModules.DownloadModule as DownloadModuleInterface
+
+export type EmbyRequestPriority = 'playback' | 'normal' | 'background'
+
+export interface EmbyHttpRequest {
+    url: string
+    method?: string
+    headers?: Record<string, string>
+    body?: string
+    fields?: string[]
+    priority?: EmbyRequestPriority
+}
+
+// Android only, requests are cancelled by the id passed to request
+export interface EmbyHttpModuleInterface {
+    setDefaultHeaders(headers: Record<string, string>): void
+    request(id: number, request: EmbyHttpRequest): Promise<{status: number, body: string}>
+    cancel(id: number): void
+}
+
+export const EmbyHttpModule = NativeModules.EmbyHttpModule as EmbyHttpModuleInterface | undefined
+
+export interface PlaybackReportSession {
+    // the emby/Sessions/Playing endpoint, Start, Progress and Stopped are sent to it and below it
+    url: string
+    headers: Record<string, string>
+    itemId: string
+    mediaSourceId?: string
+    playSessionId: string
+}
+
+// Android only, the player reports position and pause changes of the session itself
+export interface PlaybackReportModuleInterface {
+    begin(session: PlaybackReportSession): void
+    end(): void
+}
+
+export const PlaybackReportModule = NativeModules.PlaybackReportModule as PlaybackReportModuleInterface | undefined
@@ -1,6 +1,6 @@
 import { PropsWithNavigation } from "@global";
 import { OSType, isOS } from "@helper/device";
-import { FontModule } from "@helper/font";
+import { FontModule, loadFontFamily } from "@helper/font";
 import { logger } from "@helper/log";
 import { useAppDispatch, useAppSelector } from "@hook/store";
 import { ColorScheme, selectThemeBasicStyle, updateMenuBarPaddingOffset, updateShowVideoLink, updateTheme } from "@store/themeSlice";
@@ -144,7 +144,10 @@ export function Page({navigation}: PropsWithNavigation<"theme">) {
                         style={{inputAndroid: {minWidth: "50%", ...theme}, inputIOS: {...theme}}}
                         value={fontName}
                         items={fontList}
-                        onValueChange={(font) => dispatch(updateTheme({fontFamily: font}))} />
+                        onValueChange={(font) => {
+                            loadFontFamily(font)
+                            dispatch(updateTheme({fontFamily: font}))
+                        }} />
                 </View>
             </ScrollView>
         </View>
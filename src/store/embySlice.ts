@@ -6,6 +6,7 @@ import { StorageHelper } from '@helper/store';
 import { EmbySite } from '@model/EmbySite';
 import { EmbyConfig } from '@helper/env';
 import { Emby } from '@api/emby';
+import { kMediaCardFields } from '@api/view';
 import { View, ViewDetail } from '@model/View';
 import { PlaybackInfo } from '@model/PlaybackInfo';
 import _ from 'lodash';
@@ -85,7 +86,7 @@ export const loginToSiteAsync = createAppAsyncThunk<EmbySite|null, Authenticatio
 
 export const fetchEmbyAlbumAsync = createAppAsyncThunk<View|undefined, void>("emby/view", async (_, config) => {
     const emby = await config.getState().emby.emby
-    const data = emby?.getView?.()
+    const data = emby?.getView?.({signal: config.signal})
     return data
 })
 
@@ -116,7 +117,7 @@ export const fetchLatestMediaAsync = createAppAsyncThunk<(Media[]|undefined)[]|u
     const albums = state.emby.source?.albums ?? []
     const medias = await Promise.all(
         albums.map(async album => {
-            return await emby?.getLatestMedia?.(Number(album.Id));
+            return await emby?.getLatestMedia?.(Number(album.Id), {signal: config.signal});
         }),
     );
     return medias
@@ -130,6 +131,7 @@ export const fetchAlbumMediaAsync = createAppAsyncThunk("emby/album/media", asyn
     let startIdx = 0
     const data = await emby?.getCollection?.(Number(id), type, {
         StartIndex: startIdx,
+        fields: kMediaCardFields,
     });
     const total = data?.TotalRecordCount;
     if (!total) return null
@@ -138,7 +140,7 @@ export const fetchAlbumMediaAsync = createAppAsyncThunk("emby/album/media", asyn
     startIdx += data.Items.length
     while (startIdx < total) {
         try {
-            const data = await emby?.getCollection?.(Number(id), type, { StartIndex: startIdx, })
+            const data = await emby?.getCollection?.(Number(id), type, { StartIndex: startIdx, fields: kMediaCardFields })
             if (!data) return null
             items.push(...data.Items)
             startIdx += data.Items.length
@@ -1,3 +1,6 @@
+import { clientHeaders } from "@api/http"
+import { makeEmbyUrl } from "@api/config"
+import { PlaybackReportModule } from "@helper/native"
 import { useAppDispatch, useAppSelector } from "@hook/store"
 import { startPlayAsync, stopPlayAsync, trackPlayAsync } from "@store/playerSlice"
 import { throttle } from "lodash"
@@ -13,8 +16,24 @@ const throttleUpdate = throttle((callable: Callable) => {
 export function PlayerMonitor() {
     const player = useAppSelector(state => state.player)
     const emby = useAppSelector(state => state.emby.emby)
+    const site = useAppSelector(state => state.emby.site)
     const dispatch = useAppDispatch()
     useEffect(() => {
+        // the native player reports progress itself, it only needs to know the session
+        if (PlaybackReportModule) {
+            if (player.status === "start" && player.source === "emby" && site?.server && player.mediaId && player.sessionId) {
+                PlaybackReportModule.begin({
+                    url: makeEmbyUrl(null, "emby/Sessions/Playing", site.server).toString(),
+                    headers: clientHeaders(site),
+                    itemId: player.mediaId,
+                    mediaSourceId: player.mediaSourceId,
+                    playSessionId: player.sessionId,
+                })
+            } else if (player.status === "stopped") {
+                PlaybackReportModule.end()
+            }
+            return
+        }
         if (player.status === "playing") {
             throttleUpdate(() => {
                 dispatch(trackPlayAsync({isPause: false}))
@@ -27,10 +46,10 @@ export function PlayerMonitor() {
         } else if (player.status === "stopped") {
             dispatch(stopPlayAsync())
         }
-    }, [player, emby, dispatch])
+    }, [player, emby, site, dispatch])
 
     useEffect(() => {
-        dispatch(stopPlayAsync())
+        if (!PlaybackReportModule) dispatch(stopPlayAsync())
         return () => throttleUpdate.cancel()
     }, [])
     return null
@@ -16,19 +16,21 @@ export function SiteResource() {
     const theme = useAppSelector(selectThemeBasicStyle);
     const site = useAppSelector(state => state.emby.site);
 
+    // requests still running when the site changes or the screen unmounts are cancelled
     useEffect(() => {
-        dispatch(fetchEmbyAlbumAsync());
+        const request = dispatch(fetchEmbyAlbumAsync());
+        return () => request.abort();
     }, [site]);
 
     useEffect(() => {
-        const getMedia = async () => {
-            setLoading(true);
-            await dispatch(fetchLatestMediaAsync());
+        setLoading(true);
+        const request = dispatch(fetchLatestMediaAsync());
+        request.then(() => {
             setTimeout(() => {
                 setLoading(false);
             }, 1000);
-        };
-        getMedia();
+        });
+        return () => request.abort();
     }, [albums]);
 
     return (